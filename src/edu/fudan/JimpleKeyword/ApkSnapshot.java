@@ -0,0 +1,804 @@
+package edu.fudan.JimpleKeyword;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import edu.fudan.JimpleKeyword.util.SootUtil;
+import soot.Local;
+import soot.MethodOrMethodContext;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Type;
+import soot.Unit;
+import soot.Value;
+import soot.VoidType;
+import soot.jimple.InstanceInvokeExpr;
+import soot.jimple.InvokeExpr;
+import soot.jimple.InvokeStmt;
+import soot.jimple.Jimple;
+import soot.jimple.JimpleBody;
+import soot.jimple.toolkits.callgraph.CallGraph;
+import soot.jimple.toolkits.callgraph.Edge;
+import soot.jimple.toolkits.callgraph.Kind;
+import soot.util.Chain;
+
+/**
+	
+	Snapshot of the analysis-ready state of an APK.
+	
+	FlowDroid bootstrap takes most of the running time,
+	while the same APK is usually analyzed with several keyword lists and options.
+	So the results of bootstrap are saved to disk,
+	and later runs on the same APK load them instead of recomputing.
+	
+	The snapshot contains:
+	- Options of bootstrap, which are checked before the snapshot is restored
+	- Call Graph edges, with statements identified by their index in method body
+	- Entry point (dummy main method) and reachable methods
+	- Package name of APK
+	- Points-to results of the locals used in key-value invocations
+	
+	Soot still loads the classes of APK when snapshot is used,
+	since the Jimple statements are inspected anyway.
+	The snapshot is only valid when the method bodies are the same as recorded,
+	which is checked when it's restored.
+
+ */
+class ApkSnapshot
+{
+	//
+	// Snapshots in other format versions are ignored
+	private static final int FORMAT_VERSION = 2;
+	
+	// Statement index of the edges without source statement
+	private static final int NO_UNIT = -1;
+	
+	//
+	// Options of Soot and FlowDroid bootstrap the snapshot is taken with,
+	// the snapshot is only used with the same options
+	private String bootstrapOptions;
+	
+	//
+	// Info on APK
+	String apkPackageName;
+	
+	//
+	// Methods referred to by snapshot are stored in a table
+	// and referred to by their index in the table
+	private List<String> methodSignatures = new ArrayList<String>();
+	
+	// The number of statements in methods,
+	// used for checking whether method bodies are the same as recorded.
+	// -1 if the method body isn't recorded.
+	private List<Integer> methodUnitCounts = new ArrayList<Integer>();
+	
+	//
+	// The dummy main method created by FlowDroid
+	// doesn't exist before FlowDroid bootstrap.
+	// A dummy main method with the same name and same number of statements
+	// is created in its place when restored.
+	private String dummyMainClassName;
+	private String dummyMainMethodName;
+	private int dummyMainMethodId;
+	
+	//
+	// Call Graph edges
+	private List<int[]> edges = new ArrayList<int[]>();		// {source method, source statement, target method}
+	private List<String> edgeKinds = new ArrayList<String>();
+	
+	// Methods reachable from dummy main method
+	private List<Integer> reachableMethodIds = new ArrayList<Integer>();
+	
+	//
+	// Points-to results of locals in key-value invocations,
+	// grouped by method ID and local name
+	private Map<Integer, Map<String, int[]>> allocNodeIdsOfLocalName = new HashMap<Integer, Map<String, int[]>>();
+	
+	// Points-to results mapped to locals, built when restored
+	private Map<Local, int[]> allocNodeIdsOfLocal;
+	
+	//
+	// Temporary index used when snapshot is captured
+	private Map<SootMethod, Integer> methodIds;
+	private Map<SootMethod, Map<Unit, Integer>> unitIndexesOfMethod;
+	
+	private ApkSnapshot()
+	{
+	}
+	
+	/**
+		
+		Compute the key of snapshot.
+		
+		The key is a hash of APK file, the listing of ANDROID.JAR path,
+		the FlowDroid config files and the bootstrap mode,
+		so a snapshot is never used with different inputs.
+	
+	 */
+	static String computeKey(String androidJar, String apkFile)
+	{
+		MessageDigest digest;
+		try
+		{
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			// Unexpected error, SHA-256 is always available
+			// Fail-fast
+			throw new RuntimeException("Unexpected missing SHA-256 algorithm", e);
+		}
+		
+		digest.update(("JimpleKeyword snapshot " + FORMAT_VERSION).getBytes());
+		digest.update(Config.cfgOnlyBootstrap ? (byte)1 : (byte)0);
+		
+		//
+		// Hash the content of APK and config files
+		updateDigestWithFile(digest, new File(apkFile));
+		updateDigestWithFile(digest, new File(Config.CONFIG_FILE_TAINT_WRAPPER));
+		updateDigestWithFile(digest, new File(Config.CONFIG_FILE_ANDROID_CALLBACK));
+		updateDigestWithFile(digest, new File(Config.CONFIG_FILE_SOURCES_SINKS));
+		
+		//
+		// The platform jars are large,
+		// so only their names, sizes and modification times are hashed
+		updateDigestWithListing(digest, new File(androidJar), "");
+		
+		//
+		// Convert the hash to hex string
+		StringBuilder key = new StringBuilder();
+		for (byte b : digest.digest())
+		{
+			key.append(String.format("%02x", b));
+		}
+		
+		return key.toString();
+	}
+	
+	private static void updateDigestWithFile(MessageDigest digest, File file)
+	{
+		try
+		{
+			InputStream inputStream = new FileInputStream(file);
+			try
+			{
+				byte[] buffer = new byte[65536];
+				int bytesRead;
+				while ((bytesRead = inputStream.read(buffer)) > 0)
+				{
+					digest.update(buffer, 0, bytesRead);
+				}
+			}
+			finally
+			{
+				inputStream.close();
+			}
+		}
+		catch (IOException e)
+		{
+			// Unexpected error
+			// since we have checked the files when program launch
+			// Fail-fast
+			throw new RuntimeException("Unexpected IO error on " + file.getPath(), e);
+		}
+	}
+	
+	private static void updateDigestWithListing(MessageDigest digest, File file, String relativePath)
+	{
+		if (file.isDirectory())
+		{
+			//
+			// Sort the names so that the hash doesn't depend on listing order
+			String[] names = file.list();
+			if (names == null)
+			{
+				return;
+			}
+			Arrays.sort(names);
+			
+			for (String name : names)
+			{
+				updateDigestWithListing(digest, new File(file, name), relativePath + "/" + name);
+			}
+		}
+		else
+		{
+			String entry = relativePath + "," + file.length() + "," + file.lastModified() + "\n";
+			digest.update(entry.getBytes());
+		}
+	}
+	
+	/**
+		
+		Describe the options affecting the results of bootstrap,
+		i.e. the bootstrap mode and how ANDROID.JAR is given to Soot.
+	
+	 */
+	static String describeBootstrapOptions(boolean forceAndroidJar)
+	{
+		return String.format("cfg-only=%b,force-android-jar=%b",
+				Config.cfgOnlyBootstrap, forceAndroidJar);
+	}
+	
+	/**
+		
+		Check if the snapshot is taken with the same options of bootstrap.
+		It must be checked before the snapshot is restored.
+	
+	 */
+	boolean isTakenWithOptions(boolean forceAndroidJar)
+	{
+		return bootstrapOptions.equals(describeBootstrapOptions(forceAndroidJar));
+	}
+	
+	/**
+		
+		Capture the snapshot of current Soot Scene.
+		
+		It must be called right after FlowDroid bootstrap,
+		when the Call Graph and points-to analysis are ready.
+		If the Scene isn't supported, null is returned.
+	
+	 */
+	static ApkSnapshot capture(String apkPackageName, boolean forceAndroidJar)
+	{
+		//
+		// FlowDroid uses dummy main method as the only entry point
+		List<SootMethod> entryPoints = Scene.v().getEntryPoints();
+		if (entryPoints.size() != 1)
+		{
+			System.err.println("[WARN] Snapshot isn't saved, since there isn't a single entry point");
+			return null;
+		}
+		SootMethod dummyMain = entryPoints.get(0);
+		
+		ApkSnapshot snapshot = new ApkSnapshot();
+		snapshot.bootstrapOptions = describeBootstrapOptions(forceAndroidJar);
+		snapshot.apkPackageName = apkPackageName;
+		snapshot.methodIds = new HashMap<SootMethod, Integer>();
+		snapshot.unitIndexesOfMethod = new HashMap<SootMethod, Map<Unit, Integer>>();
+		
+		snapshot.dummyMainClassName = dummyMain.getDeclaringClass().getName();
+		snapshot.dummyMainMethodName = dummyMain.getName();
+		snapshot.dummyMainMethodId = snapshot.getMethodId(dummyMain);
+		
+		//
+		// Record Call Graph edges
+		for (Edge edge : Scene.v().getCallGraph())
+		{
+			int srcMethodId = snapshot.getMethodId(edge.src());
+			int srcUnitIndex = edge.srcUnit() == null ?
+					NO_UNIT : snapshot.getUnitIndex(edge.src(), edge.srcUnit());
+			int tgtMethodId = snapshot.getMethodId(edge.tgt());
+			
+			snapshot.edges.add(new int[] { srcMethodId, srcUnitIndex, tgtMethodId });
+			snapshot.edgeKinds.add(edge.kind().toString());
+		}
+		
+		//
+		// Record reachable methods
+		Iterator<MethodOrMethodContext> methodIter = Scene.v().getReachableMethods().listener();
+		while (methodIter.hasNext())
+		{
+			snapshot.reachableMethodIds.add(snapshot.getMethodId(methodIter.next().method()));
+		}
+		
+		//
+		// Record points-to results of the locals in key-value invocations.
+		// SPARK only builds points-to sets for the methods it has reached,
+		// whose bodies have been retrieved in bootstrap,
+		// and the locals of other methods point to nothing.
+		// So only the methods with active body are inspected,
+		// the bodies of others aren't retrieved only to record empty results,
+		// which would defeat lazy method bodies and memory-lean mode.
+		// The locals not recorded point to nothing when restored as well,
+		// so the snapshot can still be used with any option set.
+		List<SootClass> classes = new ArrayList<SootClass>(Scene.v().getClasses());
+		for (SootClass curClass : classes)
+		{
+			if (JimpleCandidateSet.isSystemPackage(curClass.getPackageName()))
+			{
+				continue;
+			}
+			
+			List<SootMethod> methods = new ArrayList<SootMethod>(curClass.getMethods());
+			for (SootMethod m : methods)
+			{
+				if (m.hasActiveBody())
+				{
+					snapshot.recordAllocNodeIdsInMethod(m);
+				}
+			}
+		}
+		
+		// Drop the temporary index
+		snapshot.methodIds = null;
+		snapshot.unitIndexesOfMethod = null;
+		
+		return snapshot;
+	}
+	
+	private void recordAllocNodeIdsInMethod(SootMethod m)
+	{
+		Map<String, int[]> allocNodeIdsOfMethod = null;
+		for (Unit unit : m.getActiveBody().getUnits())
+		{
+			if (!(unit instanceof InvokeStmt) || !JimpleSelector.isInvokeStmtContainKeyValue(unit))
+			{
+				continue;
+			}
+			
+			//
+			// Only the base of instance invocation is queried
+			// in data block inspection
+			InvokeExpr invokeExpr = ((InvokeStmt)unit).getInvokeExpr();
+			if (!(invokeExpr instanceof InstanceInvokeExpr))
+			{
+				continue;
+			}
+			Value base = ((InstanceInvokeExpr)invokeExpr).getBase();
+			if (!(base instanceof Local))
+			{
+				continue;
+			}
+			
+			if (allocNodeIdsOfMethod == null)
+			{
+				allocNodeIdsOfMethod = new HashMap<String, int[]>();
+				allocNodeIdsOfLocalName.put(getMethodId(m), allocNodeIdsOfMethod);
+			}
+			
+			String localName = ((Local)base).getName();
+			if (!allocNodeIdsOfMethod.containsKey(localName))
+			{
+				allocNodeIdsOfMethod.put(localName, JimpleCandidateSet.queryAllocNodeIds(base));
+			}
+		}
+	}
+	
+	private int getMethodId(SootMethod m)
+	{
+		Integer methodId = methodIds.get(m);
+		if (methodId == null)
+		{
+			methodId = methodSignatures.size();
+			methodIds.put(m, methodId);
+			methodSignatures.add(m.getSignature());
+			methodUnitCounts.add(-1);
+		}
+		
+		return methodId;
+	}
+	
+	private int getUnitIndex(SootMethod m, Unit unit)
+	{
+		//
+		// Index the statements of method at the first time
+		Map<Unit, Integer> unitIndexes = unitIndexesOfMethod.get(m);
+		if (unitIndexes == null)
+		{
+			unitIndexes = new IdentityHashMap<Unit, Integer>();
+			for (Unit curUnit : m.getActiveBody().getUnits())
+			{
+				unitIndexes.put(curUnit, unitIndexes.size());
+			}
+			unitIndexesOfMethod.put(m, unitIndexes);
+			
+			// Record the number of statements for validation
+			methodUnitCounts.set(getMethodId(m), unitIndexes.size());
+		}
+		
+		return unitIndexes.get(unit);
+	}
+	
+	/**
+		
+		Restore the state recorded to Soot Scene.
+		
+		The classes of APK must have been loaded by Soot.
+		If the classes don't match the snapshot, false is returned.
+		The classes, entry points and Call Graph of Scene are only modified
+		after the snapshot is checked, but the method bodies may have been retrieved,
+		so the Scene should be reset before any other analysis.
+	
+	 */
+	boolean restore()
+	{
+		//
+		// Resolve the methods in snapshot,
+		// the dummy main method is created after the snapshot is checked
+		SootMethod[] methods = new SootMethod[methodSignatures.size()];
+		for (int i=0; i<methods.length; i++)
+		{
+			if (i != dummyMainMethodId)
+			{
+				methods[i] = Scene.v().grabMethod(methodSignatures.get(i));
+			}
+		}
+		
+		//
+		// Check the bodies of methods with recorded statements,
+		// and index their statements
+		Map<Integer, List<Unit>> unitsOfMethod = new HashMap<Integer, List<Unit>>();
+		for (int i=0; i<methods.length; i++)
+		{
+			int unitCount = methodUnitCounts.get(i);
+			if (unitCount < 0 || i == dummyMainMethodId)
+			{
+				continue;
+			}
+			
+			if (methods[i] == null || !SootUtil.ensureMethodActiveBody(methods[i]))
+			{
+				System.err.println("[WARN] Snapshot doesn't match APK, method missing: " + methodSignatures.get(i));
+				return false;
+			}
+			
+			List<Unit> units = new ArrayList<Unit>(methods[i].getActiveBody().getUnits());
+			if (units.size() != unitCount)
+			{
+				System.err.println("[WARN] Snapshot doesn't match APK, method body changed: " + methodSignatures.get(i));
+				return false;
+			}
+			unitsOfMethod.put(i, units);
+		}
+		
+		//
+		// Map the points-to results to locals
+		allocNodeIdsOfLocal = new HashMap<Local, int[]>();
+		for (Map.Entry<Integer, Map<String, int[]>> methodEntry : allocNodeIdsOfLocalName.entrySet())
+		{
+			// The dummy main method is recreated without locals
+			if (methodEntry.getKey() == dummyMainMethodId)
+			{
+				continue;
+			}
+			
+			SootMethod m = methods[methodEntry.getKey()];
+			if (m == null || !SootUtil.ensureMethodActiveBody(m))
+			{
+				System.err.println("[WARN] Snapshot doesn't match APK, method missing: " + methodSignatures.get(methodEntry.getKey()));
+				return false;
+			}
+			
+			Map<String, Local> localsByName = new HashMap<String, Local>();
+			for (Local local : m.getActiveBody().getLocals())
+			{
+				localsByName.put(local.getName(), local);
+			}
+			
+			for (Map.Entry<String, int[]> localEntry : methodEntry.getValue().entrySet())
+			{
+				Local local = localsByName.get(localEntry.getKey());
+				if (local == null)
+				{
+					System.err.println("[WARN] Snapshot doesn't match APK, local missing: " + localEntry.getKey());
+					return false;
+				}
+				allocNodeIdsOfLocal.put(local, localEntry.getValue());
+			}
+		}
+		
+		//
+		// The snapshot matches APK, restore it to Scene
+		methods[dummyMainMethodId] = createDummyMainMethod(methodUnitCounts.get(dummyMainMethodId));
+		unitsOfMethod.put(dummyMainMethodId, new ArrayList<Unit>(methods[dummyMainMethodId].getActiveBody().getUnits()));
+		
+		//
+		// Rebuild Call Graph.
+		// The edges to methods which aren't loaded, e.g. methods of excluded classes, are skipped
+		Map<String, Kind> kindsByName = getKindsByName();
+		CallGraph callGraph = new CallGraph();
+		int skippedEdges = 0;
+		for (int i=0; i<edges.size(); i++)
+		{
+			int[] edge = edges.get(i);
+			SootMethod srcMethod = methods[edge[0]];
+			SootMethod tgtMethod = methods[edge[2]];
+			Kind kind = kindsByName.get(edgeKinds.get(i));
+			if (srcMethod == null || tgtMethod == null || kind == null)
+			{
+				skippedEdges++;
+				continue;
+			}
+			
+			Unit srcUnit = edge[1] == NO_UNIT ? null : unitsOfMethod.get(edge[0]).get(edge[1]);
+			callGraph.addEdge(new Edge(srcMethod, srcUnit, tgtMethod, kind));
+		}
+		
+		Scene.v().setEntryPoints(Collections.singletonList(methods[dummyMainMethodId]));
+		Scene.v().setCallGraph(callGraph);
+		
+		//
+		// Reachable methods are computed from the Call Graph rebuilt,
+		// they are the same as recorded unless some edges are skipped
+		int reachableMethodCount = Scene.v().getReachableMethods().size();
+		if (skippedEdges > 0 || reachableMethodCount != reachableMethodIds.size())
+		{
+			System.err.println(String.format("[WARN] Snapshot restored with %d edges skipped, %d of %d reachable methods",
+					skippedEdges, reachableMethodCount, reachableMethodIds.size()));
+		}
+		
+		return true;
+	}
+	
+	/**
+		
+		Create a method in place of the dummy main method of FlowDroid.
+		
+		Its body consists of nop statements,
+		so that the edges from dummy main method can be restored.
+	
+	 */
+	private SootMethod createDummyMainMethod(int unitCount)
+	{
+		SootClass dummyMainClass = new SootClass(dummyMainClassName, soot.Modifier.PUBLIC);
+		SootMethod dummyMain = new SootMethod(dummyMainMethodName, Collections.<Type>emptyList(),
+				VoidType.v(), soot.Modifier.PUBLIC | soot.Modifier.STATIC);
+		dummyMainClass.addMethod(dummyMain);
+		Scene.v().addClass(dummyMainClass);
+		dummyMainClass.setApplicationClass();
+		
+		JimpleBody body = Jimple.v().newBody(dummyMain);
+		Chain<Unit> units = body.getUnits();
+		for (int i=0; i<unitCount-1; i++)
+		{
+			units.add(Jimple.v().newNopStmt());
+		}
+		units.add(Jimple.v().newReturnVoidStmt());
+		dummyMain.setActiveBody(body);
+		
+		return dummyMain;
+	}
+	
+	/**
+		
+		Map names of call edge kinds to kinds.
+		
+		Kinds are constants of Kind class,
+		and they are looked up with reflection.
+	
+	 */
+	private static Map<String, Kind> getKindsByName()
+	{
+		Map<String, Kind> kindsByName = new HashMap<String, Kind>();
+		for (Field field : Kind.class.getFields())
+		{
+			if (Modifier.isStatic(field.getModifiers()) && field.getType() == Kind.class)
+			{
+				try
+				{
+					Kind kind = (Kind)field.get(null);
+					kindsByName.put(kind.toString(), kind);
+				}
+				catch (IllegalAccessException e)
+				{
+					// Unexpected error, public fields are always accessible
+					// Fail-fast
+					throw new RuntimeException("Unexpected inaccessible field Kind." + field.getName(), e);
+				}
+			}
+		}
+		
+		return kindsByName;
+	}
+	
+	/**
+		
+		Return the alloc node IDs of given local recorded in snapshot.
+		An empty array is returned for other values.
+	
+	 */
+	int[] getAllocNodeIds(Value localOrField)
+	{
+		int[] allocNodeIds = allocNodeIdsOfLocal.get(localOrField);
+		return allocNodeIds == null ? new int[0] : allocNodeIds;
+	}
+	
+	/**
+		
+		Save snapshot to file.
+		
+		The snapshot is written to a temp file and then renamed,
+		so that other runs never see a partial snapshot.
+		Failures are reported but not fatal.
+	
+	 */
+	void save(File snapshotFile)
+	{
+		try
+		{
+			File parentDir = snapshotFile.getAbsoluteFile().getParentFile();
+			parentDir.mkdirs();
+			File tempFile = File.createTempFile("snapshot", ".tmp", parentDir);
+			
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+					new GZIPOutputStream(new FileOutputStream(tempFile))));
+			try
+			{
+				writeTo(out);
+			}
+			finally
+			{
+				out.close();
+			}
+			
+			if (!tempFile.renameTo(snapshotFile))
+			{
+				tempFile.delete();
+				System.err.println("[WARN] Snapshot isn't saved, failed to rename temp file to " + snapshotFile.getPath());
+			}
+		}
+		catch (IOException e)
+		{
+			System.err.println("[WARN] Snapshot isn't saved: " + e.getMessage());
+		}
+	}
+	
+	/**
+		
+		Load snapshot from file.
+		If it doesn't exist or can't be read, null is returned.
+	
+	 */
+	static ApkSnapshot load(File snapshotFile)
+	{
+		if (!snapshotFile.isFile())
+		{
+			return null;
+		}
+		
+		try
+		{
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					new GZIPInputStream(new FileInputStream(snapshotFile))));
+			try
+			{
+				ApkSnapshot snapshot = new ApkSnapshot();
+				if (!snapshot.readFrom(in))
+				{
+					System.err.println("[WARN] Snapshot in other format version ignored: " + snapshotFile.getPath());
+					return null;
+				}
+				
+				return snapshot;
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+		catch (IOException e)
+		{
+			System.err.println("[WARN] Snapshot ignored, failed to read " + snapshotFile.getPath() + ": " + e.getMessage());
+			return null;
+		}
+	}
+	
+	private void writeTo(DataOutputStream out) throws IOException
+	{
+		out.writeInt(FORMAT_VERSION);
+		out.writeUTF(bootstrapOptions);
+		out.writeUTF(apkPackageName);
+		
+		out.writeInt(methodSignatures.size());
+		for (int i=0; i<methodSignatures.size(); i++)
+		{
+			out.writeUTF(methodSignatures.get(i));
+			out.writeInt(methodUnitCounts.get(i));
+		}
+		
+		out.writeUTF(dummyMainClassName);
+		out.writeUTF(dummyMainMethodName);
+		out.writeInt(dummyMainMethodId);
+		
+		out.writeInt(edges.size());
+		for (int i=0; i<edges.size(); i++)
+		{
+			int[] edge = edges.get(i);
+			out.writeInt(edge[0]);
+			out.writeInt(edge[1]);
+			out.writeInt(edge[2]);
+			out.writeUTF(edgeKinds.get(i));
+		}
+		
+		out.writeInt(reachableMethodIds.size());
+		for (int methodId : reachableMethodIds)
+		{
+			out.writeInt(methodId);
+		}
+		
+		out.writeInt(allocNodeIdsOfLocalName.size());
+		for (Map.Entry<Integer, Map<String, int[]>> methodEntry : allocNodeIdsOfLocalName.entrySet())
+		{
+			out.writeInt(methodEntry.getKey());
+			out.writeInt(methodEntry.getValue().size());
+			for (Map.Entry<String, int[]> localEntry : methodEntry.getValue().entrySet())
+			{
+				out.writeUTF(localEntry.getKey());
+				out.writeInt(localEntry.getValue().length);
+				for (int allocNodeId : localEntry.getValue())
+				{
+					out.writeInt(allocNodeId);
+				}
+			}
+		}
+	}
+	
+	private boolean readFrom(DataInputStream in) throws IOException
+	{
+		if (in.readInt() != FORMAT_VERSION)
+		{
+			return false;
+		}
+		bootstrapOptions = in.readUTF();
+		apkPackageName = in.readUTF();
+		
+		int methodCount = in.readInt();
+		for (int i=0; i<methodCount; i++)
+		{
+			methodSignatures.add(in.readUTF());
+			methodUnitCounts.add(in.readInt());
+		}
+		
+		dummyMainClassName = in.readUTF();
+		dummyMainMethodName = in.readUTF();
+		dummyMainMethodId = in.readInt();
+		
+		int edgeCount = in.readInt();
+		for (int i=0; i<edgeCount; i++)
+		{
+			edges.add(new int[] { in.readInt(), in.readInt(), in.readInt() });
+			edgeKinds.add(in.readUTF());
+		}
+		
+		int reachableMethodCount = in.readInt();
+		for (int i=0; i<reachableMethodCount; i++)
+		{
+			reachableMethodIds.add(in.readInt());
+		}
+		
+		int methodWithLocalsCount = in.readInt();
+		for (int i=0; i<methodWithLocalsCount; i++)
+		{
+			int methodId = in.readInt();
+			int localCount = in.readInt();
+			Map<String, int[]> allocNodeIdsOfMethod = new HashMap<String, int[]>();
+			for (int j=0; j<localCount; j++)
+			{
+				String localName = in.readUTF();
+				int[] allocNodeIds = new int[in.readInt()];
+				for (int k=0; k<allocNodeIds.length; k++)
+				{
+					allocNodeIds[k] = in.readInt();
+				}
+				allocNodeIdsOfMethod.put(localName, allocNodeIds);
+			}
+			allocNodeIdsOfLocalName.put(methodId, allocNodeIdsOfMethod);
+		}
+		
+		return true;
+	}
+}
@@ -0,0 +1,129 @@
+package edu.fudan.JimpleKeyword;
+
+import java.io.PrintStream;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import soot.SootMethod;
+
+/**
+	
+	This class writes call chains to root callers as a graph,
+	instead of writing each chain as full text.
+	
+	The chains of popular methods share most of their methods,
+	so each method and each edge is written only once,
+	and each hit refers to its method and root callers by ID.
+	The lines are written to output stream directly:
+	
+	  M,<method ID>,<method signature>
+	  E,<caller method ID>,<callee method ID>
+	  H,<hit method ID>,<root caller method IDs separated by ';'>,<hit info>
+	
+	A method or edge is written before the first line referring to it,
+	the method IDs are the method numbers of Call Graph index.
+	Each call chain in text is a path of edges
+	from a root caller down to hit method.
+
+ */
+class CallChainGraphWriter
+{
+	private PrintStream out;
+	private CallGraphIndex callGraph;
+	
+	//
+	// Methods and edges written
+	private BitSet methodsWritten = new BitSet();
+	private Set<Long> edgesWritten = new HashSet<Long>();
+	
+	CallChainGraphWriter(PrintStream out, CallGraphIndex callGraph)
+	{
+		this.out = out;
+		this.callGraph = callGraph;
+	}
+	
+	/**
+		
+		Write a method if it hasn't been written,
+		and return its ID.
+	
+	 */
+	int writeMethod(int m)
+	{
+		if (!methodsWritten.get(m))
+		{
+			methodsWritten.set(m);
+			out.println("M," + m + ',' + callGraph.getMethod(m).getSignature());
+		}
+		
+		return m;
+	}
+	
+	int writeMethod(SootMethod m)
+	{
+		return writeMethod(callGraph.getMethodNumber(m));
+	}
+	
+	/**
+		
+		Write an edge from caller method to callee method
+		if it hasn't been written.
+	
+	 */
+	void writeEdge(int callerMethod, int calleeMethod)
+	{
+		if (edgesWritten.add(((long)callerMethod << 32) | calleeMethod))
+		{
+			writeMethod(callerMethod);
+			writeMethod(calleeMethod);
+			out.println("E," + callerMethod + ',' + calleeMethod);
+		}
+	}
+	
+	/**
+		
+		Write the edges of a call chain to root caller.
+		
+		The chain is given as the methods except root caller,
+		starting from hit method.
+	
+	 */
+	void writeChain(SootMethod rootCaller, List<SootMethod> callChain)
+	{
+		int callerMethod = writeMethod(rootCaller);
+		for (int i=callChain.size()-1; i>=0; i--)
+		{
+			int calleeMethod = callGraph.getMethodNumber(callChain.get(i));
+			writeEdge(callerMethod, calleeMethod);
+			callerMethod = calleeMethod;
+		}
+	}
+	
+	/**
+		
+		Write a hit referring to its method and root callers.
+		
+		The hit info is written last since it may contain commas.
+	
+	 */
+	void writeHit(int hitMethod, List<SootMethod> rootCallers, String hitInfo)
+	{
+		StringBuilder hitLine = new StringBuilder("H,");
+		hitLine.append(writeMethod(hitMethod));
+		hitLine.append(',');
+		for (int i=0; i<rootCallers.size(); i++)
+		{
+			if (i > 0)
+			{
+				hitLine.append(';');
+			}
+			hitLine.append(writeMethod(rootCallers.get(i)));
+		}
+		hitLine.append(',');
+		hitLine.append(hitInfo);
+		
+		out.println(hitLine);
+	}
+}
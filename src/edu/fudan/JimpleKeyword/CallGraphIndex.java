@@ -0,0 +1,357 @@
+package edu.fudan.JimpleKeyword;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import edu.fudan.JimpleKeyword.util.UnitIdIndex;
+import soot.MethodOrMethodContext;
+import soot.Scene;
+import soot.SootMethod;
+import soot.Unit;
+import soot.util.queue.QueueReader;
+
+/**
+	
+	Compact index of the Call Graph of APK,
+	used by the analyses walking up from callee to callers.
+	
+	The reachable methods are given dense numbers,
+	and so are the statements in their bodies.
+	The caller statements of each method are kept in
+	compressed sparse row format, i.e.
+	the callers of method i are recorded from callerOffsets[i]
+	to callerOffsets[i+1] - 1 of callerUnits.
+	
+	The methods from dummyMainClass and the entry point methods
+	are recorded in bitsets, so they are checked in constant time.
+	
+	The index is built from the ICFG once after FlowDroid bootstrap,
+	the callers of each method are recorded in the order the ICFG returns them,
+	and the method of a statement is the one the ICFG returns.
+	So the walks on the index are the same as those on the ICFG.
+
+ */
+class CallGraphIndex
+{
+	// Returned when a method or statement isn't in index
+	static final int NO_METHOD = -1;
+	
+	//
+	// Reachable methods by method number
+	private SootMethod[] methods;
+	
+	// Method numbers indexed by Soot's numbers of methods
+	private int[] methodNumberOfSootNumber;
+	
+	//
+	// Statements by statement number,
+	// and the number of the method each statement belongs to
+	private UnitIdIndex unitNumbers = new UnitIdIndex();
+	private Unit[] units = new Unit[1024];
+	private int[] methodOfUnit = new int[1024];
+	private int unitCount;
+	
+	//
+	// Caller statements of methods in CSR format
+	private int[] callerOffsets;
+	private int[] callerUnits;
+	
+	//
+	// Methods declared in dummyMainClass
+	private BitSet dummyMainMethods = new BitSet();
+	
+	// Entry point methods, i.e. the methods without callers
+	// and the methods called from dummyMainClass only.
+	// They are the root callers when walking up to callers.
+	private BitSet entryPointMethods = new BitSet();
+	
+	/**
+		
+		Check if a method is declared in dummyMainClass by name
+	
+	 */
+	private static boolean isDeclaredInDummyMain(SootMethod m)
+	{
+		return m.getDeclaringClass().getName().contains("dummyMainClass");
+	}
+	
+	/**
+		
+		Record a statement and the method it belongs to,
+		return the statement number.
+	
+	 */
+	private int addUnit(Unit unit, int methodNum)
+	{
+		if (unitCount == units.length)
+		{
+			units = Arrays.copyOf(units, unitCount * 2);
+			methodOfUnit = Arrays.copyOf(methodOfUnit, unitCount * 2);
+		}
+		
+		units[unitCount] = unit;
+		methodOfUnit[unitCount] = methodNum;
+		unitNumbers.put(unit, unitCount);
+		
+		return unitCount++;
+	}
+	
+	/**
+		
+		Initializer of this class
+		
+		The Call Graph and ICFG of APK are indexed here.
+	
+	 */
+	CallGraphIndex()
+	{
+		//
+		// Number the reachable methods
+		List<SootMethod> reachableMethods = new ArrayList<SootMethod>();
+		int maxSootNumber = 0;
+		QueueReader<MethodOrMethodContext> methodIter = Scene.v().getReachableMethods().listener();
+		while (methodIter.hasNext())
+		{
+			SootMethod m = methodIter.next().method();
+			reachableMethods.add(m);
+			maxSootNumber = Math.max(maxSootNumber, m.getNumber());
+		}
+		
+		methods = reachableMethods.toArray(new SootMethod[reachableMethods.size()]);
+		methodNumberOfSootNumber = new int[maxSootNumber + 1];
+		Arrays.fill(methodNumberOfSootNumber, NO_METHOD);
+		for (int i=0; i<methods.length; i++)
+		{
+			methodNumberOfSootNumber[methods[i].getNumber()] = i;
+		}
+		
+		//
+		// Number the statements in the bodies of reachable methods,
+		// the ICFG knows the method of these statements only
+		for (int i=0; i<methods.length; i++)
+		{
+			if (!methods[i].hasActiveBody())
+			{
+				continue;
+			}
+			
+			for (Unit unit : methods[i].getActiveBody().getUnits())
+			{
+				addUnit(unit, i);
+			}
+		}
+		
+		//
+		// Record the caller statements of each method
+		callerOffsets = new int[methods.length + 1];
+		callerUnits = new int[1024];
+		int callerCount = 0;
+		for (int i=0; i<methods.length; i++)
+		{
+			callerOffsets[i] = callerCount;
+			for (Unit caller : Main.cfgOfApk.getCallersOf(methods[i]))
+			{
+				int unitNum = unitNumbers.get(caller);
+				if (unitNum == UnitIdIndex.NO_ID)
+				{
+					// The ICFG doesn't know the method of caller
+					unitNum = addUnit(caller, NO_METHOD);
+				}
+				
+				if (callerCount == callerUnits.length)
+				{
+					callerUnits = Arrays.copyOf(callerUnits, callerCount * 2);
+				}
+				callerUnits[callerCount++] = unitNum;
+			}
+		}
+		callerOffsets[methods.length] = callerCount;
+		
+		//
+		// Trim the arrays
+		callerUnits = Arrays.copyOf(callerUnits, callerCount);
+		units = Arrays.copyOf(units, unitCount);
+		methodOfUnit = Arrays.copyOf(methodOfUnit, unitCount);
+		
+		//
+		// Record the methods from dummyMainClass
+		for (int i=0; i<methods.length; i++)
+		{
+			if (isDeclaredInDummyMain(methods[i]))
+			{
+				dummyMainMethods.set(i);
+			}
+		}
+		
+		//
+		// Record the entry point methods.
+		// FlowDroid set all components called from dummyMainClass,
+		// so a method is an entry point if all its callers are from dummyMainClass.
+		for (int i=0; i<methods.length; i++)
+		{
+			boolean callersFromDummyMain = true;
+			for (int j=callerOffsets[i]; j<callerOffsets[i+1]; j++)
+			{
+				int callerMethod = methodOfUnit[callerUnits[j]];
+				if (callerMethod == NO_METHOD || !dummyMainMethods.get(callerMethod))
+				{
+					callersFromDummyMain = false;
+					break;
+				}
+			}
+			
+			if (callersFromDummyMain)
+			{
+				entryPointMethods.set(i);
+			}
+		}
+	}
+	
+	int getMethodCount()
+	{
+		return methods.length;
+	}
+	
+	SootMethod getMethod(int methodNum)
+	{
+		return methods[methodNum];
+	}
+	
+	/**
+		
+		Return the number of a method,
+		or NO_METHOD if it isn't reachable.
+	
+	 */
+	int getMethodNumber(SootMethod m)
+	{
+		int sootNumber = m.getNumber();
+		if (sootNumber >= methodNumberOfSootNumber.length)
+		{
+			return NO_METHOD;
+		}
+		
+		return methodNumberOfSootNumber[sootNumber];
+	}
+	
+	/**
+		
+		Return the number of the method a statement belongs to,
+		or NO_METHOD if the ICFG doesn't know it.
+	
+	 */
+	int getMethodNumberOf(Unit unit)
+	{
+		int unitNum = unitNumbers.get(unit);
+		if (unitNum == UnitIdIndex.NO_ID)
+		{
+			return NO_METHOD;
+		}
+		
+		return methodOfUnit[unitNum];
+	}
+	
+	/**
+		
+		Return the method a statement belongs to,
+		or null if the ICFG doesn't know it.
+	
+	 */
+	SootMethod getMethodOf(Unit unit)
+	{
+		int methodNum = getMethodNumberOf(unit);
+		return methodNum == NO_METHOD ? null : methods[methodNum];
+	}
+	
+	//
+	// The callers of method are indexed from
+	// getCallerBegin(methodNum) to getCallerEnd(methodNum) - 1
+	
+	int getCallerBegin(int methodNum)
+	{
+		return callerOffsets[methodNum];
+	}
+	
+	int getCallerEnd(int methodNum)
+	{
+		return callerOffsets[methodNum + 1];
+	}
+	
+	Unit getCallerUnit(int callerIndex)
+	{
+		return units[callerUnits[callerIndex]];
+	}
+	
+	/**
+		
+		Return the number of the method a caller statement belongs to,
+		or NO_METHOD if the ICFG doesn't know it.
+	
+	 */
+	int getCallerMethodNumber(int callerIndex)
+	{
+		return methodOfUnit[callerUnits[callerIndex]];
+	}
+	
+	/**
+		
+		Check if a method is an entry point,
+		i.e. it has no caller or is called from dummyMainClass only.
+	
+	 */
+	boolean isEntryPoint(int methodNum)
+	{
+		return entryPointMethods.get(methodNum);
+	}
+	
+	boolean isDummyMainMethod(int methodNum)
+	{
+		return dummyMainMethods.get(methodNum);
+	}
+	
+	/**
+		
+		Check if a method is declared in dummyMainClass.
+		The methods not in index are checked by name.
+	
+	 */
+	boolean isDummyMainMethod(SootMethod m)
+	{
+		int methodNum = getMethodNumber(m);
+		if (methodNum == NO_METHOD)
+		{
+			return isDeclaredInDummyMain(m);
+		}
+		
+		return dummyMainMethods.get(methodNum);
+	}
+	
+	int getCallerCount()
+	{
+		return callerUnits.length;
+	}
+	
+	int getUnitCount()
+	{
+		return unitCount;
+	}
+	
+	/**
+		
+		Return the approximate size of the index in bytes,
+		assuming 4 bytes for each reference as with compressed oops.
+	
+	 */
+	long getFootprintInBytes()
+	{
+		long arrayElements = (long)methods.length + methodNumberOfSootNumber.length
+				+ units.length + methodOfUnit.length
+				+ callerOffsets.length + callerUnits.length;
+		long bitSetBytes = (dummyMainMethods.size() + entryPointMethods.size()) / 8;
+		
+		// The statement index keeps a reference and an int in each slot
+		return arrayElements * 4 + (long)unitNumbers.capacity() * 8 + bitSetBytes;
+	}
+}
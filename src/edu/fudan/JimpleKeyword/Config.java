@@ -30,6 +30,56 @@ public class Config
 	// On default, we inspect all methods in APK.
 	// We can turn on reachable methods only feature with "-d" command line switch.
 	public static boolean reachableMethodsOnly;
+	// Max number of string consts whose keyword verdict is cached.
+	// We can change it with "--cache-size N" command line switch,
+	// and 0 disables the cache.
+	public static int strConstCacheSize = 65536;
+	// On default, classes are scanned on a single thread.
+	// We can scan classes with N threads using "--threads N" command line switch.
+	// In reachable methods only mode, only keyword inspection is parallel.
+	// The root callers of hits and data blocks are inspected with N threads as well.
+	public static int scanThreads = 1;
+	// On default, CFG of APK is built by running FlowDroid info-flow analysis
+	// with dummy sources and sinks.
+	// We can build CFG directly without the analysis using "--cfg-only" command line switch.
+	public static boolean cfgOnlyBootstrap;
+	// On default, FlowDroid bootstrap runs every time.
+	// We can save and reuse the results of bootstrap in a directory
+	// using "--snapshot-dir DIR" command line switch.
+	public static String snapshotDir;
+	// On default, every APK is analyzed with Soot.
+	// We can skip the APKs without any keyword in the string pools of dex files
+	// using "--triage" command line switch.
+	public static boolean dexStringTriage;
+	// On default, the bodies of all methods in APK are retrieved and scanned.
+	// We can skip the methods which can't contain any candidate statement,
+	// as indexed from the code of dex files, using "--lazy-bodies" command line switch.
+	// The statement IDs are then numbered over the scanned methods only.
+	// It doesn't affect reachable methods only mode.
+	public static boolean lazyMethodBodies;
+	// On default, the method bodies and FlowDroid solver state are kept till the APK is analyzed.
+	// We can release them once the later stages don't need them using "--lean" command line switch.
+	public static boolean memoryLean;
+	// On default, each call chain to root caller is written as full text.
+	// We can write them as a graph of methods, in which each method and each call edge
+	// is written once, using "--graph-chains" command line switch.
+	public static boolean graphCallChains;
+	// On default, APKs in batch mode are analyzed in this JVM one after another.
+	// We can analyze them with a pool of N worker JVMs using "--workers N" command line switch.
+	public static int batchWorkers;
+	// Max heap size of each worker JVM, e.g. 4g.
+	// We can set it with "--worker-heap SIZE" command line switch,
+	// otherwise the max heap size of this JVM, if any, is passed on.
+	public static String workerHeapSize;
+	// Wall-clock time limit in seconds on analyzing an APK with worker JVM.
+	// We can set it with "--apk-timeout SECONDS" command line switch,
+	// and 0 means no limit.
+	public static int apkTimeoutSeconds;
+	// Number of APKs a worker JVM analyzes before it's restarted,
+	// so that the heap growth of Soot is shed.
+	// We can change it with "--apks-per-worker N" command line switch,
+	// and 0 means worker is never restarted.
+	public static int apksPerWorker = 20;
 	
 	public static boolean DEBUG = true;
 	
@@ -0,0 +1,110 @@
+package edu.fudan.JimpleKeyword;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import edu.fudan.JimpleKeyword.io.DexFile;
+import soot.SootMethod;
+
+/**
+	
+	This class indexes the methods in dex files of an APK
+	which can't contain any candidate statement,
+	so that they don't need to be jimplified.
+	
+	A candidate statement is an invocation accepted by JimpleSelector.
+	So a method is ruled out if none of the methods it invokes
+	may be accepted, judging by their names and parameter types.
+	
+	The index is conservative. Methods whose code isn't fully decoded,
+	and methods not defined in dex, are never ruled out.
+
+ */
+class DexMethodIndex
+{
+	//
+	// Verdict on each method reference of a dex file
+	private static final byte VERDICT_UNKNOWN = 0;
+	private static final byte VERDICT_MAY_BE_INTERESTED = 1;
+	private static final byte VERDICT_NOT_INTERESTED = 2;
+	
+	// Signatures of methods ruled out, in Soot format
+	private Set<String> ruledOutMethods = new HashSet<String>();
+	
+	// Number of methods with code in dex files
+	private int indexedMethodCount;
+	
+	/**
+		
+		Check if a method is ruled out by the index,
+		if so, there is no need to retrieve its body.
+	
+	 */
+	boolean isRuledOut(SootMethod m)
+	{
+		return ruledOutMethods.contains(m.getSignature());
+	}
+	
+	int getRuledOutMethodCount()
+	{
+		return ruledOutMethods.size();
+	}
+	
+	int getIndexedMethodCount()
+	{
+		return indexedMethodCount;
+	}
+	
+	/**
+		
+		Initializer of this class
+		
+		The code items of all dex files in APK are decoded here.
+	
+	 */
+	DexMethodIndex(String apkFile, JimpleSelector jimpleSelector)
+	{
+		//
+		// A class may be defined in several dex files,
+		// the method is ruled out only if all its definitions are.
+		Set<String> neededMethods = new HashSet<String>();
+		
+		for (DexFile dexFile : DexFile.readDexFilesOfApk(apkFile))
+		{
+			byte[] verdicts = new byte[dexFile.getMethodIdCount()];
+			for (DexFile.CodeMethod codeMethod : dexFile.getMethodsWithCode())
+			{
+				indexedMethodCount++;
+				String signature = dexFile.getMethodSignature(codeMethod.methodIdx);
+				
+				int[] invokedMethodIds = dexFile.getInvokedMethodIds(codeMethod.codeOff);
+				boolean needed = invokedMethodIds == null;
+				for (int i=0; !needed && i<invokedMethodIds.length; i++)
+				{
+					int invokedMethodId = invokedMethodIds[i];
+					if (verdicts[invokedMethodId] == VERDICT_UNKNOWN)
+					{
+						String invokedMethodName = dexFile.getMethodName(invokedMethodId);
+						List<String> parameterTypes = dexFile.getMethodParameterTypes(invokedMethodId);
+						verdicts[invokedMethodId] = jimpleSelector.mayInvocationBeInterested(invokedMethodName, parameterTypes) ?
+								VERDICT_MAY_BE_INTERESTED : VERDICT_NOT_INTERESTED;
+					}
+					
+					needed = verdicts[invokedMethodId] == VERDICT_MAY_BE_INTERESTED;
+				}
+				
+				if (needed)
+				{
+					neededMethods.add(signature);
+				}
+				else
+				{
+					ruledOutMethods.add(signature);
+				}
+			}
+		}
+		
+		ruledOutMethods.removeAll(neededMethods);
+	}
+}
@@ -0,0 +1,144 @@
+package edu.fudan.JimpleKeyword;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import soot.FastHierarchy;
+import soot.Scene;
+import soot.SootClass;
+
+/**
+	
+	Index of the classes which are sub-classes of framework classes
+	managing content display, such as Activity, Fragment.
+	
+	A class is displayable if the name of itself or any of its super classes
+	contains the name of such framework class.
+	The classes whose names match are found once,
+	and their sub-classes are marked through the FastHierarchy of Soot,
+	so each check is a bitset lookup by class number
+	instead of a walk up the super classes.
+	
+	The classes added to Scene after the index is built
+	are checked by walking up the super classes.
+
+ */
+class DisplayableClassIndex
+{
+	// Displayable classes by Soot's numbers of classes
+	private BitSet displayableClasses = new BitSet();
+	
+	// Classes indexed by Soot's numbers of classes
+	private BitSet indexedClasses = new BitSet();
+	
+	/**
+		
+		Check if the name of a class contains
+		the name of class managing content display
+	
+	 */
+	private static boolean isDisplayableClassName(String className)
+	{
+		return className.contains("android.app.Activity")
+				|| className.contains("android.app.Fragment");
+	}
+	
+	/**
+		
+		Check if a class is displayable by walking up its super classes
+	
+	 */
+	private static boolean isChildOfDisplayableClass(SootClass sootClass)
+	{
+		// Check classes from the lowest class hierarchy
+		SootClass curClass = sootClass;
+		while (true)
+		{
+			if (isDisplayableClassName(curClass.getName()))
+			{
+				return true;
+			}
+			
+			//
+			// Otherwise, check the superclass of current class
+			if (curClass.hasSuperclass())
+			{
+				curClass = curClass.getSuperclass();
+			}
+			else
+			{
+				// We have arrived at the top of class hierarchy
+				// so the given class isn't a child of Activity
+				return false;
+			}
+		}
+	}
+	
+	/**
+		
+		Initializer of this class
+		
+		The classes in Scene are indexed here.
+	
+	 */
+	DisplayableClassIndex()
+	{
+		//
+		// Find out the classes whose names match
+		List<SootClass> pendingClasses = new ArrayList<SootClass>();
+		for (SootClass curClass : Scene.v().getClasses())
+		{
+			indexedClasses.set(curClass.getNumber());
+			if (isDisplayableClassName(curClass.getName()))
+			{
+				displayableClasses.set(curClass.getNumber());
+				pendingClasses.add(curClass);
+			}
+		}
+		
+		//
+		// Mark the sub-classes of displayable classes.
+		// Only super classes are walked up without the index,
+		// so the classes implementing an interface aren't marked.
+		FastHierarchy hierarchy = Scene.v().getOrMakeFastHierarchy();
+		while (!pendingClasses.isEmpty())
+		{
+			SootClass curClass = pendingClasses.remove(pendingClasses.size() - 1);
+			if (curClass.isInterface())
+			{
+				continue;
+			}
+			
+			for (SootClass subClass : hierarchy.getSubclassesOf(curClass))
+			{
+				if (!displayableClasses.get(subClass.getNumber()))
+				{
+					displayableClasses.set(subClass.getNumber());
+					pendingClasses.add(subClass);
+				}
+			}
+		}
+	}
+	
+	/**
+		
+		Check if the given class is a sub-class of framework class which
+		manages content display, such as Activity, Fragment.
+	
+	 */
+	boolean isDisplayable(SootClass sootClass)
+	{
+		if (!indexedClasses.get(sootClass.getNumber()))
+		{
+			return isChildOfDisplayableClass(sootClass);
+		}
+		
+		return displayableClasses.get(sootClass.getNumber());
+	}
+	
+	int getDisplayableClassCount()
+	{
+		return displayableClasses.cardinality();
+	}
+}
@@ -3,7 +3,9 @@ package edu.fudan.JimpleKeyword;
 import java.util.ArrayList;
 import java.util.List;
 
+import soot.SootMethodRef;
 import soot.Unit;
+import soot.jimple.InvokeStmt;
 
 /**
 
@@ -19,13 +21,26 @@ class HashMapStatHandler
 	// Jimple doesn't seem to duplicate
 	private List<String> jimpleUsingHashMap;
 	
-	boolean isStatementUsingHashMap(String unitInString)
+	boolean isStatementUsingHashMap(Unit unit)
 	{
+		//
+		// Only invoke statements may call HashMap methods
+		if (!(unit instanceof InvokeStmt))
+		{
+			return false;
+		}
+		
+		//
+		// Check the invoked method reference directly
+		// instead of rendering the statement
+		SootMethodRef methodRef = ((InvokeStmt)unit).getInvokeExpr().getMethodRef();
+		String methodName = methodRef.name();
+		
 		//
 		// Here we only use "HashMap" since HashMap is an interface
 		// There LinkedHashMap etc.
-		if (unitInString.contains("HashMap")
-				&& (unitInString.contains("put(") || unitInString.contains("get(")))
+		if (methodRef.declaringClass().getName().contains("HashMap")
+				&& (methodName.equals("put") || methodName.equals("get")))
 		{
 			return true;
 		}
@@ -41,7 +56,7 @@ class HashMapStatHandler
 		and record relating information
 	
 	 */
-	void inspectHashMapStatement(Unit curUnit, String curUnitInString)
+	void inspectHashMapStatement(Unit curUnit)
 	{
 		//
 		// Skip parameters validation currently.
@@ -50,7 +65,7 @@ class HashMapStatHandler
 		// Record statement using HashMap if needed
 		if (Config.recordJimpleUsingHashMap)
 		{
-			jimpleUsingHashMap.add(curUnitInString);
+			jimpleUsingHashMap.add(curUnit.toString());
 		}
 	}
 	
@@ -0,0 +1,883 @@
+package edu.fudan.JimpleKeyword;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import edu.fudan.JimpleKeyword.util.SootUtil;
+import soot.Local;
+import soot.MethodOrMethodContext;
+import soot.PointsToAnalysis;
+import soot.PointsToSet;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootField;
+import soot.SootMethod;
+import soot.Unit;
+import soot.Value;
+import soot.ValueBox;
+import soot.jimple.InstanceInvokeExpr;
+import soot.jimple.InvokeExpr;
+import soot.jimple.InvokeStmt;
+import soot.jimple.spark.pag.Node;
+import soot.jimple.spark.sets.P2SetVisitor;
+import soot.jimple.spark.sets.PointsToSetInternal;
+import soot.tagkit.Tag;
+import soot.util.queue.QueueReader;
+
+/**
+	
+	This class scans the Jimple statements in APK once
+	and records the candidate statements,
+	i.e. the statements selected by JimpleSelector.
+	
+	Statement selection doesn't depend on keyword list,
+	so the candidates are shared by the KeywordInspector of each keyword list.
+	The other info not depending on keyword list is recorded here as well,
+	e.g. statements using HashMap, key tainted vars and data block objects.
+
+ */
+class JimpleCandidateSet
+{
+	//
+	// Utilities for Jimple statement selection
+	private JimpleSelector jimpleSelector;
+	
+	// Index of methods which don't need to be jimplified,
+	// null if lazy method bodies is disabled
+	private DexMethodIndex dexMethodIndex;
+	
+	// Tracker of method bodies not kept after scan
+	private MethodBodyTracker bodyTracker;
+	
+	// Layout resources of displayable classes found in scan,
+	// so RootCallerInspector doesn't scan their bodies again
+	private LayoutResourceIndex layoutResourceIndex;
+	
+	//
+	// Candidate statements in scanning order
+	private List<JimpleCandidate> candidates;
+	
+	//
+	// Jimple statements using HashMap,
+	// they are recorded by HashMapStatHandler of each collector
+	private List<String> jimpleUsingHashMap;
+	
+	//
+	// For library package name list,
+	// we only care about the first 3 parts of package name
+	private Set<String> libraryPackageName;
+	
+	//
+	// This list is used for recording key tainted vars
+	// and taint source statements.
+	// So that we can find out the starting point of data-flow analysis.
+	private List<KeyTaintedVar> keyTaintedVars;
+	
+	// Number of points-to queries saved by memoization
+	private long savedPointsToQueries;
+	
+	// Integer in string matcher,
+	// used for points-to sets which aren't from SPARK
+	// Not needed to initialize multiple times
+	static Pattern intPattern = Pattern.compile("[1-9][0-9]*");
+	
+	/**
+		
+		Find out the IDs of data block objects
+		that given key-value invocation operates on.
+		
+		If the invocation has no this pointer
+		or the this pointer points to nothing, null is returned.
+	
+	 */
+	private int[] figureOutDataBlockObjIds(Unit curUnit, CandidateScanCollector out)
+	{
+		//
+		// Get this parameter of invoke expression
+		InvokeExpr invokeExpr = ((InvokeStmt)curUnit).getInvokeExpr();
+		Value thisArg = null;
+		if (invokeExpr instanceof InstanceInvokeExpr)
+		{
+			InstanceInvokeExpr instanceInvokeExpr = (InstanceInvokeExpr)invokeExpr;
+			thisArg = instanceInvokeExpr.getBase();
+		}
+		else
+		{
+			//
+			// Skip invoke statement without this pointer
+			return null;
+		}
+		
+		//
+		// Find out the potential values of this argument.
+		// The same local is usually used by many key-value calls in a method,
+		// so the result of points-to query is memoized for each local.
+		int[] thisObjIdList = null;
+		if (thisArg instanceof Local)
+		{
+			thisObjIdList = out.allocNodeIdsOfLocal.get(thisArg);
+			if (thisObjIdList == null)
+			{
+				thisObjIdList = queryAllocNodeIds(thisArg);
+				out.allocNodeIdsOfLocal.put((Local)thisArg, thisObjIdList);
+			}
+			else
+			{
+				out.savedPointsToQueries++;
+			}
+		}
+		else if (thisArg instanceof SootField)
+		{
+			thisObjIdList = queryAllocNodeIds(thisArg);
+		}
+		
+		if (thisObjIdList == null || thisObjIdList.length == 0)
+		{
+			return null;
+		}
+		
+		return thisObjIdList;
+	}
+	
+	/**
+		
+		Query the points-to analysis for the alloc nodes
+		that given local or field may point to.
+		An empty array is returned if nothing is found.
+	
+	 */
+	static int[] queryAllocNodeIds(Value localOrField)
+	{
+		//
+		// Points-to analysis isn't run when APK snapshot is used,
+		// the results recorded in snapshot are used instead
+		if (Main.apkSnapshot != null)
+		{
+			return Main.apkSnapshot.getAllocNodeIds(localOrField);
+		}
+		
+		PointsToAnalysis pointToAnalysis = Scene.v().getPointsToAnalysis();
+		PointsToSet pointsToSet = null;
+		if (localOrField instanceof Local)
+		{
+			pointsToSet = pointToAnalysis.reachingObjects((Local)localOrField);
+		}
+		else if (localOrField instanceof SootField)
+		{
+			pointsToSet = pointToAnalysis.reachingObjects((SootField)localOrField);
+		}
+		
+		if (pointsToSet == null || pointsToSet.isEmpty())
+		{
+			return new int[0];
+		}
+		
+		return getAllocNodeIds(pointsToSet);
+	}
+	
+	/**
+		
+		Return the numbers of the alloc nodes in given points-to set,
+		which are used as data block object IDs.
+		The numbers are distinct and in increasing order.
+		
+		For SPARK points-to sets, the alloc nodes are visited directly.
+		Other points-to sets are rendered, and the numbers in the text are extracted.
+		The numbers out of int range can't be alloc node numbers, so they are skipped.
+	
+	 */
+	private static int[] getAllocNodeIds(PointsToSet pointsToSet)
+	{
+		final BitSet allocNodeIds = new BitSet();
+		if (pointsToSet instanceof PointsToSetInternal)
+		{
+			//
+			// Collect the numbers of alloc nodes
+			// without rendering the points-to set
+			((PointsToSetInternal)pointsToSet).forall(new P2SetVisitor()
+			{
+				@Override
+				public void visit(Node n)
+				{
+					allocNodeIds.set(n.getNumber());
+				}
+			});
+		}
+		else
+		{
+			//
+			// Fallback for other points-to analysis,
+			// extract the integers in the string of points-to set
+			Matcher intMatcher = intPattern.matcher(pointsToSet.toString());
+			while (intMatcher.find())
+			{
+				String idInString = intMatcher.group();
+				if (idInString.length() <= 10 && Long.parseLong(idInString) <= Integer.MAX_VALUE)
+				{
+					allocNodeIds.set(Integer.parseInt(idInString));
+				}
+			}
+		}
+		
+		int[] ids = new int[allocNodeIds.cardinality()];
+		int idCount = 0;
+		for (int i=allocNodeIds.nextSetBit(0); i>=0; i=allocNodeIds.nextSetBit(i+1))
+		{
+			ids[idCount++] = i;
+		}
+		
+		return ids;
+	}
+	
+	/**
+		
+		Taint the key-value pair container (i.e. HashMap instance)
+		with key string const.
+	
+	 */
+	private void tryTaintHashMap(Unit curUnit, CandidateScanCollector out)
+	{
+		//
+		// Here we assume curUnit is HashMap.get or HashMap.put
+		
+		// Ensure curUnit is an invoke expression
+		if (!(curUnit instanceof InvokeStmt))
+		{
+			return;
+		}
+		
+		//
+		// Get key of current key-value pair
+		String key = KeywordInspector.extractValidKeyArgOfStat(curUnit);
+		if (key == null)
+		{
+			return;
+		}
+		
+		//
+		// Get the HashMap instance ValueBox
+		InvokeStmt invokeStmt = (InvokeStmt)curUnit;
+		InvokeExpr invokeExpr = invokeStmt.getInvokeExpr();
+		if (!(invokeExpr instanceof InstanceInvokeExpr))
+		{
+			return;
+		}
+		InstanceInvokeExpr instanceInvoke = (InstanceInvokeExpr)invokeExpr;
+		ValueBox thisBox = instanceInvoke.getBaseBox();
+		
+		//
+		// Taint this value box
+		//
+		// Currently, although this pointers may point to the same container object,
+		// this value box in each statement is a different instance.
+		// So a new tag will be associated to each this pointer in each statement.
+		Tag thisKeyTag = thisBox.getTag(KeyTaintTag.TAGNAME_KEYTAINT);
+		if (thisKeyTag == null)
+		{
+			// Create a new key taint tag
+			KeyTaintTag keyTag = new KeyTaintTag(KeyTaintTag.TAGNAME_KEYTAINT);
+			keyTag.addKeyConst(key);
+			
+			// Associate the new tag to this container variable
+			thisBox.addTag(keyTag);
+		}
+		else
+		{
+			// Add new key const to KeyTaintTag
+			KeyTaintTag keyTag = (KeyTaintTag)thisKeyTag;
+			keyTag.addKeyConst(key);
+		}
+		
+		//
+		// Record the taint source statement in order to
+		// determine the starting point of data-flow analysis
+		
+		// Create a new KeyTaintedVar instance
+		KeyTaintedVar keyTaintedVar = new KeyTaintedVar();
+		keyTaintedVar.taintSrcStmt = curUnit;
+		keyTaintedVar.varBox = thisBox;
+		
+		// Add the new KeyTaintedVar instance to list
+		out.keyTaintedVars.add(keyTaintedVar);
+	}
+	
+	/**
+		
+		Inspect given Jimple statement
+		and record it as a candidate if
+		the statement is the one we interested in
+	
+	 */
+	private void inspectJimpleStatement(Unit curUnit, SootClass curClass, int unitNum, CandidateScanCollector out)
+	{
+		//
+		// Check the Jimple statement is the one
+		// we interested in initially and quickly
+		JimpleInitialJudgeStatus initialJudgeStatus = jimpleSelector.judgeJimpleInitially(curUnit);
+		if (initialJudgeStatus == JimpleInitialJudgeStatus.JIMPLE_NOT_INTERESTED)
+		{
+			// We don't interested in current Jimple statement
+			// Skip it
+			return;
+		}
+		
+		//
+		// Perform extra actions on statements using HashMap
+		if (out.hashMapStatHandler.isStatementUsingHashMap(curUnit))
+		{
+			//
+			// Record HashMap related statement if needed
+			out.hashMapStatHandler.inspectHashMapStatement(curUnit);
+			
+			//
+			// Taint HashMap instance for data-flow analysis
+			tryTaintHashMap(curUnit, out);
+		}
+		
+		//
+		// Record current statement as a candidate
+		JimpleCandidate candidate = new JimpleCandidate();
+		candidate.statement = curUnit;
+		candidate.declaringClass = curClass;
+		candidate.unitNum = unitNum;
+		candidate.initialJudgeStatus = initialJudgeStatus;
+		
+		//
+		// Find out the data block objects of key-value invocation
+		if (JimpleSelector.isInvokeStmtContainKeyValue(curUnit))
+		{
+			candidate.dataBlockObjIds = figureOutDataBlockObjIds(curUnit, out);
+		}
+		
+		out.candidates.add(candidate);
+	}
+	
+	/**
+		
+		Scanning the Jimple statements which are though reachable by FlowDroid,
+		and record the candidates.
+	
+	 */
+	private void scanJimpleReachableOnly()
+	{
+		//
+		// Traverse the reachable method in APK
+		int unitNum = 0;					// Unique ID for each Jimple statement
+		CandidateScanCollector out = new CandidateScanCollector();
+		
+		QueueReader<MethodOrMethodContext> methodIter = Scene.v().getReachableMethods().listener();
+		while (methodIter.hasNext())
+		{
+			SootMethod m = methodIter.next().method();
+			
+			// Skip method without active body
+			if (!SootUtil.ensureMethodActiveBody(m))
+			{
+				continue;
+			}
+			
+			//
+			// Skip system packages
+			String curPackageName = m.getDeclaringClass().getPackageName();
+			if (isSystemPackage(curPackageName))
+			{
+				continue;
+			}
+			
+			//
+			// Record package name for statistics on package in app
+			inspectPackageName(curPackageName);
+			
+			//
+			// Traverse the statements in a method
+			unitNum = scanMethodBody(m, m.getDeclaringClass(), unitNum, out);
+		}
+		
+		//
+		// Save the info recorded
+		mergeCollector(out);
+	}
+	
+	//
+	// Some fixed system packages to exclude
+	static String[] fixedSystemPackages = { "java.", "dalvik.", "android.", "javax." };
+	
+	static boolean isSystemPackage(String packageName)
+	{
+		//
+		// Check if given package name starts with
+		// some known system package name
+		for (String curSystemPackages : fixedSystemPackages)
+		{
+			if (packageName.startsWith(curSystemPackages))
+			{
+				return true;
+			}
+		}
+		
+		//
+		// Given package name doesn't start with
+		// any known system package name
+		return false;
+	}
+	
+	/**
+		
+		Inspect the package name record relating info
+	
+	*/
+	private void inspectPackageName(String packageName)
+	{
+		//
+		// Canonicalize package name
+		packageName = packageName.trim();
+		
+		//
+		// Skip empty package name
+		if (packageName.isEmpty())
+		{
+			return;
+		}
+		
+		//
+		// Skip package from the same company of the app
+		if (packageName.startsWith(Main.apkCompanyId))
+		{
+			return;
+		}
+		
+		//
+		// We only expect the leading 3 parts of package name
+		String libPackage = SootUtil.getLeadingPartsOfName(packageName, 3);
+		
+		//
+		// Record package name
+		libraryPackageName.add(libPackage);
+	}
+	
+	/**
+		
+		Inspect the statements in the active body of given method.
+		
+		Statements are numbered from unitNum in order,
+		and the next unused number is returned.
+		The first layout resource set in a displayable class is recorded as well.
+		
+		In memory-lean mode, the body is released afterwards
+		if no later stage needs it.
+	
+	 */
+	private int scanMethodBody(SootMethod m, SootClass curClass, int unitNum, CandidateScanCollector out)
+	{
+		//
+		// Locals belong to a single method,
+		// so the points-to results memoized for last method are dropped
+		out.allocNodeIdsOfLocal.clear();
+		int candidateCount = out.candidates.size();
+		int keyTaintedVarCount = out.keyTaintedVars.size();
+		
+		// Layout resources are looked up for displayable classes only
+		boolean recordsLayoutResource = RootCallerInspector.isChildOfDisplayableClass(curClass);
+		
+		//
+		// Traverse the statements in a method
+		Iterator<Unit> unitIter = m.getActiveBody().getUnits().iterator();
+		while (unitIter.hasNext())
+		{
+			Unit curUnit = unitIter.next();
+			
+			// Inspect current Jimple statement
+			// and record it if we interested in.
+			inspectJimpleStatement(curUnit, curClass, unitNum, out);
+			unitNum++;
+			
+			//
+			// Record the first layout resource set in class
+			if (recordsLayoutResource && !out.layoutResourceOfClass.containsKey(curClass))
+			{
+				String resourceId = LayoutResourceIndex.getLayoutResourceOf(curUnit);
+				if (resourceId != null)
+				{
+					out.layoutResourceOfClass.put(curClass, resourceId);
+				}
+			}
+		}
+		
+		bodyTracker.releaseScannedBody(m, out.candidates.size() > candidateCount
+				|| out.keyTaintedVars.size() > keyTaintedVarCount);
+		
+		return unitNum;
+	}
+	
+	/**
+		
+		Return the methods of given class which have active body.
+		
+		The bodies of concrete methods are retrieved here.
+		The methods ruled out by dex method index are skipped
+		without retrieving their bodies.
+		
+		The class is recorded in layout resource index
+		if none of its methods is skipped.
+	
+	 */
+	private List<SootMethod> getMethodsWithBody(SootClass curClass)
+	{
+		List<SootMethod> methodsWithBody = new ArrayList<SootMethod>();
+		boolean methodsSkipped = false;
+		
+		// Clone the list of methods in order to
+		// avoid ConcurrentModificationException
+		List<SootMethod> methods = new ArrayList<SootMethod>(curClass.getMethods());
+		
+		for (SootMethod m : methods)
+		{
+			// Skip method without any candidate statement
+			if (dexMethodIndex != null && dexMethodIndex.isRuledOut(m))
+			{
+				bodyTracker.recordSkippedMethod(m);
+				methodsSkipped = true;
+				continue;
+			}
+			
+			// Skip method without active body
+			if (bodyTracker.retrieveBodyToScan(m))
+			{
+				methodsWithBody.add(m);
+			}
+		}
+		
+		if (!methodsSkipped)
+		{
+			layoutResourceIndex.recordIndexedClass(curClass);
+		}
+		
+		return methodsWithBody;
+	}
+	
+	/**
+		
+		Scanning the classes with FlowDroid
+		and record the candidates.
+		
+		This method is the main entry of Jimple
+		scrutinizing procedure.
+	
+	 */
+	private void scanJimple()
+	{
+		//
+		// Traverse the classes in APK
+		int unitNum = 0;					// Unique ID for each Jimple statement
+		CandidateScanCollector out = new CandidateScanCollector();
+		
+		Iterator<SootClass> classIter = Scene.v().getClasses().iterator();
+		while (classIter.hasNext())
+		{
+			SootClass curClass = classIter.next();
+			
+			//
+			// Skip system packages
+			String curPackageName = curClass.getPackageName();
+			if (isSystemPackage(curPackageName))
+			{
+				continue;
+			}
+			
+			//
+			// Record package name for statistics on package in app
+			inspectPackageName(curPackageName);
+			
+			//
+			// Traverse the methods in a class
+			for (SootMethod m : getMethodsWithBody(curClass))
+			{
+				unitNum = scanMethodBody(m, curClass, unitNum, out);
+			}
+		}
+		
+		//
+		// Save the info recorded
+		mergeCollector(out);
+	}
+	
+	/**
+		
+		Parallel version of scanJimple.
+		
+		Method bodies are retrieved on current thread first,
+		since jimplification modifies Scene and isn't thread safe.
+		Then the classes are inspected by a pool of workers.
+		
+		Each class is given a range of statement IDs beforehand,
+		which begins at the number of statements in the classes before it.
+		Each worker records info in its own collector,
+		and the collectors are merged in class order.
+		So the output is the same as that of scanJimple.
+		
+		All bodies are retrieved before inspection,
+		so memory-lean mode doesn't lower the peak heap of scan here,
+		only the heap after it.
+	
+	 */
+	private void scanJimpleInParallel()
+	{
+		//
+		// Retrieve method bodies and count statements of each class
+		final List<SootClass> classes = new ArrayList<SootClass>();
+		final List<List<SootMethod>> methodsOfClasses = new ArrayList<List<SootMethod>>();
+		final List<Integer> firstUnitNums = new ArrayList<Integer>();
+		int unitNum = 0;					// Unique ID for each Jimple statement
+		
+		Iterator<SootClass> classIter = Scene.v().getClasses().iterator();
+		while (classIter.hasNext())
+		{
+			SootClass curClass = classIter.next();
+			
+			//
+			// Skip system packages
+			String curPackageName = curClass.getPackageName();
+			if (isSystemPackage(curPackageName))
+			{
+				continue;
+			}
+			
+			//
+			// Record package name for statistics on package in app
+			inspectPackageName(curPackageName);
+			
+			//
+			// Record the first statement ID of current class
+			List<SootMethod> methods = getMethodsWithBody(curClass);
+			classes.add(curClass);
+			methodsOfClasses.add(methods);
+			firstUnitNums.add(unitNum);
+			
+			for (SootMethod m : methods)
+			{
+				unitNum += m.getActiveBody().getUnits().size();
+			}
+		}
+		
+		//
+		// Inspect classes in parallel
+		ExecutorService executor = Executors.newFixedThreadPool(Config.scanThreads);
+		List<Future<CandidateScanCollector>> results = new ArrayList<Future<CandidateScanCollector>>();
+		for (int i=0; i<classes.size(); i++)
+		{
+			final int classIndex = i;
+			results.add(executor.submit(new Callable<CandidateScanCollector>()
+			{
+				@Override
+				public CandidateScanCollector call()
+				{
+					SootClass curClass = classes.get(classIndex);
+					int curUnitNum = firstUnitNums.get(classIndex);
+					CandidateScanCollector out = new CandidateScanCollector();
+					
+					for (SootMethod m : methodsOfClasses.get(classIndex))
+					{
+						curUnitNum = scanMethodBody(m, curClass, curUnitNum, out);
+					}
+					
+					return out;
+				}
+			}));
+		}
+		
+		//
+		// Merge the info recorded by workers in class order
+		try
+		{
+			for (Future<CandidateScanCollector> result : results)
+			{
+				mergeCollector(result.get());
+			}
+		}
+		catch (InterruptedException e)
+		{
+			// Unexpected error, Fail-fast
+			throw new RuntimeException("Jimple scan is interrupted", e);
+		}
+		catch (ExecutionException e)
+		{
+			// Unexpected error, Fail-fast
+			throw new RuntimeException("Unexpected error in Jimple scan worker", e.getCause());
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+		
+		Save the info recorded in a collector to output fields
+	
+	 */
+	private void mergeCollector(CandidateScanCollector out)
+	{
+		candidates.addAll(out.candidates);
+		
+		keyTaintedVars.addAll(out.keyTaintedVars);
+		layoutResourceIndex.recordLayoutResources(out.layoutResourceOfClass);
+		jimpleUsingHashMap.addAll(out.hashMapStatHandler.getJimpleUsingHashMap());
+		
+		savedPointsToQueries += out.savedPointsToQueries;
+	}
+	
+	/**
+	
+		Initializer of this class
+		
+		The JimpleSelector is passed in,
+		so that the API lists parsed are reused by the APKs in batch mode.
+		
+		If dex method index is given, the methods it rules out aren't scanned.
+		Otherwise it's null.
+	
+	 */
+	JimpleCandidateSet(JimpleSelector jimpleSelector, DexMethodIndex dexMethodIndex)
+	{
+		//
+		// Initialize utilities
+		this.jimpleSelector = jimpleSelector;
+		this.dexMethodIndex = dexMethodIndex;
+		layoutResourceIndex = new LayoutResourceIndex();
+		bodyTracker = new MethodBodyTracker(layoutResourceIndex);
+		
+		//
+		// Initialize output information variables
+		candidates = new ArrayList<JimpleCandidate>();
+		jimpleUsingHashMap = new ArrayList<String>();
+		libraryPackageName = new HashSet<String>();
+		keyTaintedVars = new ArrayList<KeyTaintedVar>();
+		
+		//
+		// Scan Jimple statements
+		// and record the candidates
+		if (Config.reachableMethodsOnly)
+		{
+			scanJimpleReachableOnly();
+		}
+		else if (Config.scanThreads > 1)
+		{
+			scanJimpleInParallel();
+		}
+		else
+		{
+			scanJimple();
+		}
+	}
+	
+	//
+	// Output information access methods
+	
+	JimpleSelector getJimpleSelector()
+	{
+		return jimpleSelector;
+	}
+	
+	List<JimpleCandidate> getCandidates()
+	{
+		return candidates;
+	}
+	
+	List<String> getJimpleUsingHashMap()
+	{
+		return jimpleUsingHashMap;
+	}
+	
+	Set<String> getLibraryPackageName()
+	{
+		return libraryPackageName;
+	}
+	
+	/**
+		
+		Return the list of key tainted container variables
+		
+		So that we can do data-flow analysis on these variables
+	
+	 */
+	List<KeyTaintedVar> getKeyTaintedVars()
+	{
+		return keyTaintedVars;
+	}
+	
+	long getSavedPointsToQueries()
+	{
+		return savedPointsToQueries;
+	}
+	
+	MethodBodyTracker getBodyTracker()
+	{
+		return bodyTracker;
+	}
+	
+	LayoutResourceIndex getLayoutResourceIndex()
+	{
+		return layoutResourceIndex;
+	}
+}
+
+/**
+	
+	Data class for recording a candidate statement,
+	which is inspected with each keyword list later.
+
+ */
+class JimpleCandidate
+{
+	Unit statement;
+	SootClass declaringClass;
+	
+	// Unique ID of the statement
+	int unitNum;
+	
+	// Result of initial judgement by JimpleSelector
+	JimpleInitialJudgeStatus initialJudgeStatus;
+	
+	// The IDs of data block objects for key-value invocation,
+	// null if the statement isn't recorded in any data block
+	int[] dataBlockObjIds;
+}
+
+/**
+	
+	Data class for collecting info recorded while scanning candidates.
+	
+	In parallel scan, each class is inspected with its own collector,
+	and the collectors are merged in class order afterwards.
+
+ */
+class CandidateScanCollector
+{
+	List<JimpleCandidate> candidates = new ArrayList<JimpleCandidate>();
+	
+	List<KeyTaintedVar> keyTaintedVars = new ArrayList<KeyTaintedVar>();
+	HashMapStatHandler hashMapStatHandler = new HashMapStatHandler();
+	
+	//
+	// Alloc node IDs of the locals in the method being scanned.
+	// Each collector is used by one worker only,
+	// so a plain HashMap is enough under parallel scan.
+	Map<Local, int[]> allocNodeIdsOfLocal = new HashMap<Local, int[]>();
+	long savedPointsToQueries;
+	
+	// First layout resource set in each displayable class scanned
+	Map<SootClass, String> layoutResourceOfClass = new HashMap<SootClass, String>();
+}
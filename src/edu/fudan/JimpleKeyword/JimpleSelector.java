@@ -1,9 +1,18 @@
 package edu.fudan.JimpleKeyword;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import edu.fudan.JimpleKeyword.io.InterestedApiList;
 import edu.fudan.JimpleKeyword.io.LibrariesList;
+import soot.SootClass;
+import soot.SootMethodRef;
+import soot.Type;
 import soot.Unit;
 import soot.jimple.InvokeExpr;
 import soot.jimple.InvokeStmt;
@@ -23,6 +32,13 @@ class JimpleSelector
 	private InterestedApiList interestedApiList;
 	private LibrariesList librariesList;
 	
+	//
+	// Verdict of interested API check for each invoked method.
+	// The same API is usually invoked many times in an APK,
+	// so its signature is built only once.
+	// It is shared by the workers of parallel Jimple scan.
+	private Map<MethodRefKey, Boolean> interestedApiVerdicts = new ConcurrentHashMap<MethodRefKey, Boolean>();
+	
 	/**
 
 		Judge if a given invoke stmt related to key-value operations.
@@ -31,7 +47,7 @@ class JimpleSelector
 		the type of the first parameter is String.
 	
 	 */
-	boolean isInvokeStmtContainKeyValue(Unit unit)
+	static boolean isInvokeStmtContainKeyValue(Unit unit)
 	{
 		//
 		// Check if current invoke statement has 2 arguments
@@ -93,14 +109,13 @@ class JimpleSelector
 			return JimpleInitialJudgeStatus.JIMPLE_DEFINITE_HIT;
 		}
 		
-		String unitInString = unit.toString();
-		
 		//
 		// Check if current Jimple statement invokes
 		// API we interested in
 		if (Config.interestedApiOnly)
 		{
-			if (!interestedApiList.containInterestedApi(unitInString))
+			SootMethodRef methodRef = ((InvokeStmt)unit).getInvokeExpr().getMethodRef();
+			if (!isInterestedApi(methodRef))
 			{
 				// Skip Jimple statement that doesn't contain interested API
 				return JimpleInitialJudgeStatus.JIMPLE_NOT_INTERESTED;
@@ -112,6 +127,86 @@ class JimpleSelector
 		return JimpleInitialJudgeStatus.JIMPLE_NEED_DETAIL_INSPECTION;
 	}
 	
+	/**
+	
+		Judge if an invocation of given method may be accepted by judgeJimpleInitially,
+		with the name and parameter types of invoked method only.
+		
+		It is used for ruling out methods before they are jimplified,
+		so it never rejects an invocation judgeJimpleInitially accepts.
+		For example, special invokes aren't told apart here.
+		
+		A key-value invocation is judged by the type of its first argument,
+		which isn't known here. A String argument can be passed to
+		any parameter of class type, e.g. Object or CharSequence,
+		so every 2-parameter method whose first parameter is of class type is accepted.
+	
+	 */
+	boolean mayInvocationBeInterested(String methodName, List<String> parameterTypes)
+	{
+		//
+		// Possible key-value invocation
+		if (parameterTypes.size() == 2 && isClassTypeName(parameterTypes.get(0)))
+		{
+			return true;
+		}
+		
+		//
+		// Every invocation is interested without API filtering,
+		// otherwise the name of interested API is checked
+		if (!Config.interestedApiOnly)
+		{
+			return true;
+		}
+		return interestedApiList.hasInterestedApiName(methodName);
+	}
+	
+	//
+	// Names of primitive types in Soot format
+	private static final Set<String> primitiveTypeNames = new HashSet<String>(Arrays.asList(
+			"boolean", "byte", "short", "char", "int", "long", "float", "double", "void"));
+	
+	/**
+		
+		Check if a type name in Soot format is a class type,
+		i.e. neither a primitive type nor an array type.
+	
+	 */
+	private static boolean isClassTypeName(String typeName)
+	{
+		return !typeName.endsWith("[]") && !primitiveTypeNames.contains(typeName);
+	}
+	
+	/**
+	
+		Check if the invoked method is an interested API.
+		
+		Methods are screened with their names first,
+		and the verdict on signature is cached for each method.
+	
+	 */
+	private boolean isInterestedApi(SootMethodRef methodRef)
+	{
+		//
+		// Most methods are ruled out by name
+		if (!interestedApiList.hasInterestedApiName(methodRef.name()))
+		{
+			return false;
+		}
+		
+		//
+		// Lookup the verdict cache
+		MethodRefKey key = new MethodRefKey(methodRef);
+		Boolean verdict = interestedApiVerdicts.get(key);
+		if (verdict == null)
+		{
+			verdict = interestedApiList.isInterestedApi(methodRef.getSignature());
+			interestedApiVerdicts.put(key, verdict);
+		}
+		
+		return verdict;
+	}
+	
 	/**
 	 
 	 	Interface Method
@@ -123,15 +218,19 @@ class JimpleSelector
 		the program will run very slow.
 	
 	 */
-	boolean judgeJimpleInDetail(String unitInString)
+	boolean judgeJimpleInDetail(Unit unit, String unitInString)
 	{
 		//
 		// Check if current API invoked is in the libraries list
-		// The libraries list is long,
-		// so the matching process is time consuming.
+		//
+		// We look up the class declaring the invoked method
+		// in the package index of libraries list first,
+		// and the entries that aren't package names are matched in text.
 		if (Config.apiInLibrariesOnly)
 		{
-			if (!librariesList.containLibPackageName(unitInString))
+			String invokedClassName = ((InvokeStmt)unit).getInvokeExpr().getMethodRef().declaringClass().getName();
+			if (!librariesList.containLibClass(invokedClassName)
+				&& !librariesList.containOtherLibEntry(unitInString))
 			{
 				// Skip Jimple statement that invokes API not in libraries list
 				return false;
@@ -223,6 +322,19 @@ class JimpleSelector
 		}
 	}
 	
+	/**
+	
+		Forget the verdicts of interested API check.
+		
+		The verdicts are keyed on Soot classes,
+		so they are cleared when Soot is reset for next APK.
+	
+	 */
+	void clearInterestedApiVerdicts()
+	{
+		interestedApiVerdicts.clear();
+	}
+	
 	/**
 
 		Initializer for this class.
@@ -245,4 +357,56 @@ enum JimpleInitialJudgeStatus
 	JIMPLE_NOT_INTERESTED,
 	JIMPLE_NEED_DETAIL_INSPECTION,
 	JIMPLE_DEFINITE_HIT
-}
\ No newline at end of file
+}
+
+/**
+	
+	Key of a method reference in hash map.
+	
+	Soot creates a method reference for each invoke expression,
+	so we compare the parts of method references instead.
+	Soot types and classes are unique instances,
+	so they can be compared directly.
+
+ */
+class MethodRefKey
+{
+	private SootClass declaringClass;
+	private String name;
+	private List<Type> parameterTypes;
+	private Type returnType;
+	
+	MethodRefKey(SootMethodRef methodRef)
+	{
+		declaringClass = methodRef.declaringClass();
+		name = methodRef.name();
+		parameterTypes = methodRef.parameterTypes();
+		returnType = methodRef.returnType();
+	}
+	
+	@Override
+	public int hashCode()
+	{
+		int hash = declaringClass.hashCode();
+		hash = hash * 31 + name.hashCode();
+		hash = hash * 31 + parameterTypes.hashCode();
+		hash = hash * 31 + returnType.hashCode();
+		
+		return hash;
+	}
+	
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (!(obj instanceof MethodRefKey))
+		{
+			return false;
+		}
+		
+		MethodRefKey other = (MethodRefKey)obj;
+		return declaringClass == other.declaringClass
+				&& name.equals(other.name)
+				&& parameterTypes.equals(other.parameterTypes)
+				&& returnType.equals(other.returnType);
+	}
+}
@@ -1,7 +1,6 @@
 package edu.fudan.JimpleKeyword;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -10,7 +9,6 @@ import java.util.Queue;
 import java.util.Set;
 import java.util.Stack;
 
-import edu.fudan.JimpleKeyword.util.StringUtil;
 import soot.SootMethod;
 import soot.Unit;
 import soot.Value;
@@ -22,6 +20,7 @@ import soot.jimple.InvokeStmt;
 import soot.jimple.RetStmt;
 import soot.jimple.ReturnStmt;
 import soot.jimple.StaticInvokeExpr;
+import soot.jimple.StringConstant;
 import soot.jimple.Stmt;
 import soot.jimple.internal.JReturnVoidStmt;
 import soot.tagkit.AttributeValueException;
@@ -38,6 +37,10 @@ class KeyTaintAnalyzer
 	//
 	// Starting points of data-flow analysis
 	private List<KeyTaintedVar> keyTaintedVars;
+	
+	//
+	// Tracker of method bodies released or skipped in Jimple scan phase
+	private MethodBodyTracker bodyTracker;
 
 	//
 	// Sink point info for console output
@@ -146,7 +149,7 @@ class KeyTaintAnalyzer
 	{
 		//
 		// Check if target method from dummyMainClass
-		if (isMethodFromDummyMain(targetMethod))
+		if (Main.callGraphOfApk.isDummyMainMethod(targetMethod))
 		{
 			return;
 		}
@@ -168,7 +171,8 @@ class KeyTaintAnalyzer
 		// Skip target method without active body
 		// Active body of concrete method has already been retrieved
 		// in Jimple scan phase.
-		if (!targetMethod.hasActiveBody())
+		// The bodies not kept after scan are retrieved again.
+		if (!bodyTracker.ensureScannedBody(targetMethod))
 		{
 			return;
 		}
@@ -312,35 +316,34 @@ class KeyTaintAnalyzer
 		}
 	}
 	
-	private boolean isMethodFromDummyMain(SootMethod m)
-	{
-		//
-		// Get the class name of method
-		String className = m.getDeclaringClass().getName();
-		
-		//
-		// Determine if method from dummyMainClass
-		return className.contains("dummyMainClass");		
-	}
-	
 	private void doPropForCallers(Unit retStmt, Stack<SootMethod> methodStack)
 	{
 		//
-		// Find out caller sites
-		SootMethod curMethod = Main.cfgOfApk.getMethodOf(retStmt);
-		Collection<Unit> callerStmts = Main.cfgOfApk.getCallersOf(curMethod);
+		// Find out caller sites in Call Graph index
+		CallGraphIndex callGraph = Main.callGraphOfApk;
+		int curMethod = callGraph.getMethodNumberOf(retStmt);
+		if (curMethod == CallGraphIndex.NO_METHOD)
+		{
+			return;
+		}
 		
 		//
 		// Process each caller statements
-		for (Unit curCallerStmt : callerStmts)
+		for (int i=callGraph.getCallerBegin(curMethod); i<callGraph.getCallerEnd(curMethod); i++)
 		{
 			//
 			// Check if caller method should be skipped
-			SootMethod curCallerMethod = Main.cfgOfApk.getMethodOf(curCallerStmt);
+			Unit curCallerStmt = callGraph.getCallerUnit(i);
+			int curCallerMethodNum = callGraph.getCallerMethodNumber(i);
+			if (curCallerMethodNum == CallGraphIndex.NO_METHOD)
+			{
+				continue;
+			}
+			SootMethod curCallerMethod = callGraph.getMethod(curCallerMethodNum);
 			
 			//
 			// Skip methods from dummyMainClass
-			if (isMethodFromDummyMain(curCallerMethod))
+			if (callGraph.isDummyMainMethod(curCallerMethodNum))
 			{
 				continue;
 			}
@@ -368,15 +371,17 @@ class KeyTaintAnalyzer
 	{
 		for (Value curArgValue : argValues)
 		{
-			String curArgInStr = curArgValue.toString();
-			
 			//
-			// Raw arg value in string is in C-style.
-			// We unescape it here
-			curArgInStr = StringUtil.unescapeString(curArgInStr);
+			// Only string constants may contain HTTP addr.
+			// We read the value of constant directly
+			// instead of rendering and unescaping it
+			if (!(curArgValue instanceof StringConstant))
+			{
+				continue;
+			}
 			
 			// Convert to lower case to ignore case
-			curArgInStr = curArgInStr.toLowerCase();
+			String curArgInStr = ((StringConstant)curArgValue).value.toLowerCase();
 			
 			// Check if contains HTTP addr
 			if (curArgInStr.contains("http://")
@@ -552,7 +557,7 @@ class KeyTaintAnalyzer
 		
 		//
 		// Push the initial method to inspect to stack
-		SootMethod startPointMethod = Main.cfgOfApk.getMethodOf(keyTaintedVar.taintSrcStmt);
+		SootMethod startPointMethod = Main.callGraphOfApk.getMethodOf(keyTaintedVar.taintSrcStmt);
 		methodStack.push(startPointMethod);
 		
 		//
@@ -570,11 +575,12 @@ class KeyTaintAnalyzer
 		}
 	}
 	
-	KeyTaintAnalyzer(List<KeyTaintedVar> keyTaintedVars)
+	KeyTaintAnalyzer(List<KeyTaintedVar> keyTaintedVars, MethodBodyTracker bodyTracker)
 	{
 		//
 		// Initialize starting points of data-flow analysis
 		this.keyTaintedVars = keyTaintedVars;
+		this.bodyTracker = bodyTracker;
 		
 		//
 		// Do key taint propagation
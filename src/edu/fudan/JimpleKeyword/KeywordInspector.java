@@ -2,43 +2,31 @@ package edu.fudan.JimpleKeyword;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import edu.fudan.JimpleKeyword.io.KeywordList;
 import edu.fudan.JimpleKeyword.text.KeywordDetector;
-import edu.fudan.JimpleKeyword.util.IntTag;
-import edu.fudan.JimpleKeyword.util.SootUtil;
 import edu.fudan.JimpleKeyword.util.StringUtil;
 import edu.fudan.JimpleKeyword.util.WordCounter;
-import soot.Local;
-import soot.MethodOrMethodContext;
-import soot.PointsToAnalysis;
-import soot.PointsToSet;
-import soot.Scene;
 import soot.SootClass;
-import soot.SootField;
-import soot.SootMethod;
 import soot.Unit;
-import soot.Value;
-import soot.ValueBox;
-import soot.jimple.InstanceInvokeExpr;
 import soot.jimple.InvokeExpr;
 import soot.jimple.InvokeStmt;
 import soot.jimple.SpecialInvokeExpr;
-import soot.tagkit.Tag;
-import soot.util.queue.QueueReader;
 
 /**
 
@@ -56,10 +44,6 @@ class KeywordInspector
 	private KeywordDetector keywordDetector;
 	private JimpleSelector jimpleSelector;
 	
-	//
-	// Interested info handlers
-	private HashMapStatHandler hashMapStatHandler;
-	
 	//
 	// Output statistic information
 	//
@@ -82,8 +66,10 @@ class KeywordInspector
 	
 	// Data block statements for output
 	private List<String> dataBlockStatement;
-	// Data block raw statements for further processing
-	private List<DataBlockRawStat> dataBlockRawStat;
+	// Data block raw statements for further processing.
+	// They are grouped by data block object ID when recorded
+	// so that data blocks with keywords are picked out in linear time.
+	private Map<Integer, List<DataBlockRawStat>> dataBlockRawStatById;
 	
 	//
 	// The following fields record the statements in data blocks with keywords
@@ -93,13 +79,7 @@ class KeywordInspector
 	// Data block with keywords may hit multiple times.
 	// There may be multiple statements in a data block containing keywords
 	// This variable records the IDs of data blocks with keywords.
-	// IDs are in String format instead of int
-	private Set<String> dataBlockWithKeywordsIds;
-	
-	//
-	// For library package name list,
-	// we only care about the first 3 parts of package name
-	private Set<String> libraryPackageName;
+	private BitSet dataBlockWithKeywordsIds;
 	
 	//
 	// The following fields record the <full-package-name, keyword> pair for output
@@ -108,216 +88,63 @@ class KeywordInspector
 	private Set<String> keywordsInAppPackage;
 	private Set<String> keywordsInLibPackage;
 	
-	//
-	// This list is used for recording key tainted vars
-	// and taint source statements.
-	// So that we can find out the starting point of data-flow analysis.
-	private List<KeyTaintedVar> keyTaintedVars = new ArrayList<KeyTaintedVar>();
-	
-	// Integer in string matcher
-	// Not needed to initialize multiple times
-	static Pattern intPattern = Pattern.compile("[1-9][0-9]*");
-	
 	/**
 
 		Given statement contains key-value pair operation.
 		
-		Record the given statement in corresponding data block.
-		and return the IDs of data block objects.
+		Record the given statement in corresponding data blocks.
 
 	 */
-	private List<String> recordStatementInDataBlock(Unit curUnit, 
-			String curUnitInString, 
-			String curClassName, 
-			int unitNum,
-			String keywordInUnit)
+	private void recordStatementInDataBlock(JimpleCandidate candidate, 
+			String keywordInUnit,
+			JimpleScanCollector out)
 	{
-		//
-		// Get this parameter of invoke expression
-		InvokeExpr invokeExpr = ((InvokeStmt)curUnit).getInvokeExpr();
-		Value thisArg = null;
-		if (invokeExpr instanceof InstanceInvokeExpr)
-		{
-			InstanceInvokeExpr instanceInvokeExpr = (InstanceInvokeExpr)invokeExpr;
-			thisArg = instanceInvokeExpr.getBase();
-		}
-		else
-		{
-			//
-			// Skip invoke statement without this pointer
-			return null;
-		}
+		Unit curUnit = candidate.statement;
 		
 		//
-		// Find out the potential values of this argument
-		PointsToAnalysis pointToAnalysis = Scene.v().getPointsToAnalysis();
-		PointsToSet thisValue = null;
-		if (thisArg instanceof Local)
-		{
-			thisValue = pointToAnalysis.reachingObjects((Local)thisArg);
-		}
-		else if (thisArg instanceof SootField)
-		{
-			thisValue = pointToAnalysis.reachingObjects((SootField)thisArg);
-		}
-		
-		if (thisValue == null || thisValue.isEmpty())
-		{
-			return null;
-		}
+		// Render current statement for data block output
+		String curUnitInString = curUnit.toString();
 		
 		//
-		// Extract the alloc node num from PointsToSet
-		List<String> thisObjIdList = new ArrayList<String>();
-		String thisInStr = thisValue.toString();
-		Matcher intMatcher = intPattern.matcher(thisInStr);
-		while (intMatcher.find())
+		// Record the statement in each data block it may operate on
+		for (int thisObjId : candidate.dataBlockObjIds)
 		{
-			// Find out the object ID of "this" pointer
-			String thisObjId = intMatcher.group();
-			
-			// Record the data block object ID
-			// and it will be returned later
-			thisObjIdList.add(thisObjId);
-			
 			// Record current statement in data block statement list
-			String statement = String.format("%s,%d,%s,%s", 
-					thisObjId, unitNum, curClassName, curUnitInString);		
-			dataBlockStatement.add(statement);
+			String statement = String.format("%d,%d,%s,%s", 
+					thisObjId, candidate.unitNum, candidate.declaringClass.getName(), curUnitInString);		
+			out.dataBlockStatement.add(statement);
 
 			// Record raw statement for further processing
 			DataBlockRawStat rawStat = new DataBlockRawStat();
 			rawStat.dataBlockId = thisObjId;
 			rawStat.statement = curUnit;
 			rawStat.keyword = keywordInUnit;
-			dataBlockRawStat.add(rawStat);
-		}
-		
-		return thisObjIdList;
-	}
-	
-
-	
-	/**
-	 
-		Taint the key-value pair container (i.e. HashMap instance)
-		with key string const.
-
-	 */
-	private void tryTaintHashMap(Unit curUnit)
-	{
-		//
-		// Here we assume curUnit is HashMap.get or HashMap.put
-		
-		// Ensure curUnit is an invoke expression
-		if (!(curUnit instanceof InvokeStmt))
-		{
-			return;
-		}
-		
-		//
-		// Get key of current key-value pair
-		String key = extractValidKeyArgOfStat(curUnit);
-		if (key == null)
-		{
-			return;
-		}
-		
-		//
-		// Get the HashMap instance ValueBox
-		InvokeStmt invokeStmt = (InvokeStmt)curUnit;
-		InvokeExpr invokeExpr = invokeStmt.getInvokeExpr();
-		if (!(invokeExpr instanceof InstanceInvokeExpr))
-		{
-			return;
+			rawStat.statementLine = statement;
+			out.dataBlockRawStat.add(rawStat);
 		}
-		InstanceInvokeExpr instanceInvoke = (InstanceInvokeExpr)invokeExpr;
-		ValueBox thisBox = instanceInvoke.getBaseBox();
-		
-		//
-		// Taint this value box
-		//
-		// Currently, although this pointers may point to the same container object,
-		// this value box in each statement is a different instance.
-		// So a new tag will be associated to each this pointer in each statement.
-		Tag thisKeyTag = thisBox.getTag(KeyTaintTag.TAGNAME_KEYTAINT);
-		if (thisKeyTag == null)
-		{
-			// Create a new key taint tag
-			KeyTaintTag keyTag = new KeyTaintTag(KeyTaintTag.TAGNAME_KEYTAINT);
-			keyTag.addKeyConst(key);
-			
-			// Associate the new tag to this container variable
-			thisBox.addTag(keyTag);
-		}
-		else
-		{
-			// Add new key const to KeyTaintTag
-			KeyTaintTag keyTag = (KeyTaintTag)thisKeyTag;
-			keyTag.addKeyConst(key);
-		}
-		
-		//
-		// Record the taint source statement in order to
-		// determine the starting point of data-flow analysis
-		
-		// Create a new KeyTaintedVar instance
-		KeyTaintedVar keyTaintedVar = new KeyTaintedVar();
-		keyTaintedVar.taintSrcStmt = curUnit;
-		keyTaintedVar.varBox = thisBox;
-		
-		// Add the new KeyTaintedVar instance to list
-		keyTaintedVars.add(keyTaintedVar);
 	}
 	
 	/**
 	 
-		Inspect given Jimple statement
+		Inspect given candidate statement with keyword list
 		and record relating information if
-		the statement is the one we interested in
+		the statement contains keyword
 
 	 */
-	private void inspectJimpleStatement(Unit curUnit, SootClass curClass)
+	private void inspectCandidate(JimpleCandidate candidate, JimpleScanCollector out)
 	{		
-		//
-		// Check the Jimple statement is the one
-		// we interested in initially and quickly
-		JimpleInitialJudgeStatus initialJudgeStatus = jimpleSelector.judgeJimpleInitially(curUnit);
-		if (initialJudgeStatus == JimpleInitialJudgeStatus.JIMPLE_NOT_INTERESTED)
-		{
-			// We don't interested in current Jimple statement
-			// Skip it
-			return;
-		}
-		
-		String curUnitInString = curUnit.toString();
-		
-		// Record current Jimple statement
-		IntTag unitNumTag = (IntTag)(curUnit.getTag("unitNum"));
-		
-		//
-		// Perform extra actions on statements using HashMap
-		if (hashMapStatHandler.isStatementUsingHashMap(curUnitInString))
-		{
-			//
-			// Record HashMap related statement if needed
-			hashMapStatHandler.inspectHashMapStatement(curUnit, curUnitInString);
-			
-			//
-			// Taint HashMap instance for data-flow analysis
-			tryTaintHashMap(curUnit);
-		}
+		Unit curUnit = candidate.statement;
+		SootClass curClass = candidate.declaringClass;
 		
 		//
 		// Find out if current Jimple statement contains a keyword
-		String keywordInUnit = keywordDetector.figureOutKeywordInJimple(curUnitInString);
+		String keywordInUnit = keywordDetector.figureOutKeywordInJimple(curUnit);
 		
 		//
 		// Record key-value invocation in on the same data block instance
-		List<String> dataBlockObjIdList = null;
-		if (jimpleSelector.isInvokeStmtContainKeyValue(curUnit))
+		if (candidate.dataBlockObjIds != null)
 		{
-			dataBlockObjIdList = recordStatementInDataBlock(curUnit, curUnitInString, curClass.getName(), unitNumTag.getInt(), keywordInUnit);
+			recordStatementInDataBlock(candidate, keywordInUnit, out);
 		}
 		
 		// Check if current statement contains any known keyword
@@ -327,11 +154,15 @@ class KeywordInspector
 			return;
 		}
 		
+		//
+		// Jimple statement is rendered only when it contains keyword
+		String curUnitInString = curUnit.toString();
+		
 		//
 		// Supplement detailed inspection
-		if (initialJudgeStatus == JimpleInitialJudgeStatus.JIMPLE_NEED_DETAIL_INSPECTION)
+		if (candidate.initialJudgeStatus == JimpleInitialJudgeStatus.JIMPLE_NEED_DETAIL_INSPECTION)
 		{
-			if (!jimpleSelector.judgeJimpleInDetail(curUnitInString))
+			if (!jimpleSelector.judgeJimpleInDetail(curUnit, curUnitInString))
 			{
 				// Skip statements not pass detailed inspection 
 				return;
@@ -342,23 +173,23 @@ class KeywordInspector
 		// Jimple ID, keyword, package name, Jimple statement
 		String jimpleWithKeywordsLine = String.format(
 				"%d,%s,%s,%s", 
-				unitNumTag.getInt(), 
+				candidate.unitNum, 
 				keywordInUnit, 
 				curClass.getPackageName(), 
 				curUnitInString);
 		
-		jimpleWithKeywords.add(jimpleWithKeywordsLine);
+		out.jimpleWithKeywords.add(jimpleWithKeywordsLine);
 		
 		//
 		// Record raw Jimple statements with keywords
 		JimpleHit jimpleHitInst = new JimpleHit();
 		jimpleHitInst.jimple = curUnit;
 		jimpleHitInst.keyword = keywordInUnit;
-		jimpleHitInst.keywordUnitNum = unitNumTag.getInt();
-		jimpleHit.add(jimpleHitInst);
+		jimpleHitInst.keywordUnitNum = candidate.unitNum;
+		out.jimpleHit.add(jimpleHitInst);
 		
 		// Record current keyword
-		keywordsHit.add(keywordInUnit);
+		out.keywordsHit.add(keywordInUnit);
 		
 		//
 		// Record the keywords and its corresponding package
@@ -366,208 +197,151 @@ class KeywordInspector
 		// since a keyword may appears in multiple packages
 		String curPackageName = curClass.getPackageName();
 		String keywordInPackageLine = curPackageName + ',' + keywordInUnit;
-		keywordsInPackage.add(keywordInPackageLine);
+		out.keywordsInPackage.add(keywordInPackageLine);
 		if (curPackageName.startsWith(Main.apkCompanyId))
 		{
-			keywordsInAppPackage.add(keywordInPackageLine);
+			out.keywordsInAppPackage.add(keywordInPackageLine);
 		}
 		else
 		{
-			keywordsInLibPackage.add(keywordInPackageLine);
+			out.keywordsInLibPackage.add(keywordInPackageLine);
 		}
 		
 		//
 		// Record the statements with keywords in data blocks
-		if (dataBlockObjIdList != null)
+		if (candidate.dataBlockObjIds != null)
 		{
-			dataBlockWithKeywordsIds.addAll(dataBlockObjIdList);
+			for (int dataBlockObjId : candidate.dataBlockObjIds)
+			{
+				out.dataBlockWithKeywordsIds.set(dataBlockObjId);
+			}
 		}
 	}
 
 	/**
-		 
-		Scanning the Jimple statements which are though reachable by FlowDroid,
+		
+		Inspect the candidates with keyword list
 		and record the information we care.
+		
+		This method is the main entry of keyword
+		inspection procedure.
 	
 	 */
-	private void scanJimpleReachableOnly()
+	private void inspectCandidates(List<JimpleCandidate> candidates)
 	{
 		//
 		// Check assumptions
-		assert keywordDetector != null;		
-		
-		//
-		// Traverse the reachable method in APK
-		int unitNum = 0;					// Unique ID for each Jimple statement
+		assert keywordDetector != null;
 		
-		QueueReader<MethodOrMethodContext> methodIter = Scene.v().getReachableMethods().listener();
-		while (methodIter.hasNext())
-		{
-			SootMethod m = methodIter.next().method();			
-			
-			// Skip method without active body
-			if (!SootUtil.ensureMethodActiveBody(m))
-			{
-				continue;
-			}
-			
-			//
-			// Skip system packages
-			String curPackageName = m.getDeclaringClass().getPackageName();
-			if (isSystemPackage(curPackageName))
-			{
-				continue;
-			}
-			
-			//
-			// Record package name for statistics on package in app
-			inspectPackageName(curPackageName);
-			
-			//
-			// Traverse the statements in a method
-			Iterator<Unit> unitIter = m.getActiveBody().getUnits().iterator();
-			while (unitIter.hasNext())
-			{
-				Unit curUnit = unitIter.next();
-				
-				//
-				// Set unitNum tag for current Jimple statement
-				curUnit.addTag(new IntTag("unitNum", unitNum));
-				unitNum++;
-
-				// Inspect current Jimple statement
-				// and recording relating info if we interested in
-				inspectJimpleStatement(curUnit, m.getDeclaringClass());
-			}
-		}
-	}
-	
-	//
-	// Some fixed system packages to exclude
-	static String[] fixedSystemPackages = { "java.", "dalvik.", "android.", "javax." };
-	
-	private boolean isSystemPackage(String packageName)
-	{
-		//
-		// Check if given package name starts with
-		// some known system package name
-		for (String curSystemPackages : fixedSystemPackages)
+		JimpleScanCollector out = new JimpleScanCollector();
+		for (JimpleCandidate candidate : candidates)
 		{
-			if (packageName.startsWith(curSystemPackages))
-			{
-				return true;
-			}
+			inspectCandidate(candidate, out);
 		}
 		
 		//
-		// Given package name doesn't start with
-		// any known system package name
-		return false;
+		// Save the info recorded
+		mergeCollector(out);
 	}
 	
 	/**
-	 
-		Inspect the package name record relating info
+		
+		Parallel version of inspectCandidates.
+		
+		The candidates are split into consecutive chunks
+		which are inspected by a pool of workers.
+		Each worker records info in its own collector,
+		and the collectors are merged in chunk order.
+		So the output is the same as that of inspectCandidates.
 	
-	*/
-	private void inspectPackageName(String packageName)
+	 */
+	private void inspectCandidatesInParallel(final List<JimpleCandidate> candidates)
 	{
 		//
-		// Canonicalize package name
-		packageName = packageName.trim();
+		// Check assumptions
+		assert keywordDetector != null;
 		
 		//
-		// Skip empty package name
-		if (packageName.isEmpty())
-		{
-			return;
-		}
+		// Several chunks for each worker
+		// so that the workers finish at about the same time
+		int chunkCount = Config.scanThreads * 4;
+		int chunkSize = (candidates.size() + chunkCount - 1) / chunkCount;
 		
 		//
-		// Skip package from the same company of the app
-		if (packageName.startsWith(Main.apkCompanyId))
+		// Inspect chunks in parallel
+		ExecutorService executor = Executors.newFixedThreadPool(Config.scanThreads);
+		List<Future<JimpleScanCollector>> results = new ArrayList<Future<JimpleScanCollector>>();
+		for (int i=0; i<candidates.size(); i+=chunkSize)
 		{
-			return;
+			final int chunkBegin = i;
+			final int chunkEnd = Math.min(i + chunkSize, candidates.size());
+			results.add(executor.submit(new Callable<JimpleScanCollector>()
+			{
+				@Override
+				public JimpleScanCollector call()
+				{
+					JimpleScanCollector out = new JimpleScanCollector();
+					for (JimpleCandidate candidate : candidates.subList(chunkBegin, chunkEnd))
+					{
+						inspectCandidate(candidate, out);
+					}
+					
+					return out;
+				}
+			}));
 		}
 		
 		//
-		// We only expect the leading 3 parts of package name
-		String libPackage = SootUtil.getLeadingPartsOfName(packageName, 3);
-		
-		//
-		// Record package name
-		libraryPackageName.add(libPackage);
+		// Merge the info recorded by workers in chunk order
+		try
+		{
+			for (Future<JimpleScanCollector> result : results)
+			{
+				mergeCollector(result.get());
+			}
+		}
+		catch (InterruptedException e)
+		{
+			// Unexpected error, Fail-fast
+			throw new RuntimeException("Keyword inspection is interrupted", e);
+		}
+		catch (ExecutionException e)
+		{
+			// Unexpected error, Fail-fast
+			throw new RuntimeException("Unexpected error in keyword inspection worker", e.getCause());
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
 	}
 	
 	/**
-	 
-		Scanning the classes with FlowDroid
-		and record the information we care.
 		
-		This method is the main entry of Jimple 
-		scrutinizing procedure.
-
+		Save the info recorded in a collector to output fields
+	
 	 */
-	private void scanJimple()
+	private void mergeCollector(JimpleScanCollector out)
 	{
-		//
-		// Check assumptions
-		assert keywordDetector != null;		
-		
-		//
-		// Traverse the classes in APK
-		int unitNum = 0;					// Unique ID for each Jimple statement
-		
-		Iterator<SootClass> classIter = Scene.v().getClasses().iterator();
-		while (classIter.hasNext())
-		{
-			SootClass curClass = classIter.next();
-			
-			//
-			// Skip system packages
-			String curPackageName = curClass.getPackageName();
-			if (isSystemPackage(curPackageName))
+		jimpleWithKeywords.addAll(out.jimpleWithKeywords);
+		jimpleHit.addAll(out.jimpleHit);
+		keywordsHit.addAll(out.keywordsHit);
+		keywordsInPackage.addAll(out.keywordsInPackage);
+		keywordsInAppPackage.addAll(out.keywordsInAppPackage);
+		keywordsInLibPackage.addAll(out.keywordsInLibPackage);
+		
+		dataBlockStatement.addAll(out.dataBlockStatement);
+		for (DataBlockRawStat rawStat : out.dataBlockRawStat)
+		{
+			List<DataBlockRawStat> rawStatOfBlock = dataBlockRawStatById.get(rawStat.dataBlockId);
+			if (rawStatOfBlock == null)
 			{
-				continue;
-			}
-			
-			//
-			// Record package name for statistics on package in app
-			inspectPackageName(curPackageName);
-			
-			//
-			// Traverse the methods in a class
-			
-			// Clone the list of methods in order to
-			// avoid ConcurrentModificationException
-			List<SootMethod> methods = new ArrayList<SootMethod>(curClass.getMethods());
-			
-			for (SootMethod m : methods)
-			{					
-				// Skip method without active body
-				if (!SootUtil.ensureMethodActiveBody(m))
-				{
-					continue;
-				}
-				
-				//
-				// Traverse the statements in a method
-				Iterator<Unit> unitIter = m.getActiveBody().getUnits().iterator();
-				while (unitIter.hasNext())
-				{
-					Unit curUnit = unitIter.next();
-					
-					//
-					// Set unitNum tag for current Jimple statement
-					curUnit.addTag(new IntTag("unitNum", unitNum));
-					unitNum++;
-
-					// Inspect current Jimple statement
-					// and recording relating info if we interested in
-					inspectJimpleStatement(curUnit, curClass);
-				}
+				rawStatOfBlock = new ArrayList<DataBlockRawStat>();
+				dataBlockRawStatById.put(rawStat.dataBlockId, rawStatOfBlock);
 			}
+			rawStatOfBlock.add(rawStat);
 		}
+		dataBlockWithKeywordsIds.or(out.dataBlockWithKeywordsIds);
 	}
 
 	/**
@@ -582,29 +356,39 @@ class KeywordInspector
 		List<DataBlockRawStat> rawStatList = new ArrayList<DataBlockRawStat>();
 		
 		//
-		// Scan the data block statements list
-		// and pick out the statements with keywords
-		for (DataBlockRawStat dataBlockStat : dataBlockRawStat)
+		// Pick out the statements of each data block with keywords,
+		// in the order of data block IDs.
+		// Statements in the same data block are kept in recording order.
+		for (int dataBlockWithKeywordsId=dataBlockWithKeywordsIds.nextSetBit(0); dataBlockWithKeywordsId>=0;
+				dataBlockWithKeywordsId=dataBlockWithKeywordsIds.nextSetBit(dataBlockWithKeywordsId+1))
 		{
-			for (String dataBlockWithKeywordsId : dataBlockWithKeywordsIds)
+			List<DataBlockRawStat> rawStatOfBlock = dataBlockRawStatById.get(dataBlockWithKeywordsId);
+			if (rawStatOfBlock != null)
 			{
-				if (dataBlockStat.dataBlockId.equals(dataBlockWithKeywordsId))
-				{
-					rawStatList.add(dataBlockStat);
-				}
+				rawStatList.addAll(rawStatOfBlock);
 			}
 		}
 		
-		return rawStatList;		
+		return rawStatList;
 	}
 	
-	KeywordInspector(KeywordList keywordList)
+	/**
+	
+		Initializer of this class
+		
+		The candidates scanned once are shared by the inspectors of keyword lists,
+		so the Jimple statements are inspected with given keyword list here.
+		
+		The KeywordDetector of keyword list is passed in,
+		so that it is reused by the APKs in batch mode.
+	
+	 */
+	KeywordInspector(KeywordDetector keywordDetector, JimpleCandidateSet candidateSet)
 	{
 		//
 		// Initialize utilities		
-		keywordDetector = new KeywordDetector(keywordList);
-		jimpleSelector = new JimpleSelector();
-		hashMapStatHandler = new HashMapStatHandler();
+		this.keywordDetector = keywordDetector;
+		jimpleSelector = candidateSet.getJimpleSelector();
 		
 		//
 		// Initialize output information variables
@@ -613,25 +397,23 @@ class KeywordInspector
 		jimpleHit = new ArrayList<JimpleHit>();
 		keywordsHit = new HashSet<String>();
 		
-		libraryPackageName = new HashSet<String>();
-		
 		keywordsInAppPackage = new HashSet<String>();
 		keywordsInLibPackage = new HashSet<String>();
 		
 		dataBlockStatement = new ArrayList<String>();
-		dataBlockRawStat = new ArrayList<DataBlockRawStat>();
-		dataBlockWithKeywordsIds = new HashSet<String>();
+		dataBlockRawStatById = new HashMap<Integer, List<DataBlockRawStat>>();
+		dataBlockWithKeywordsIds = new BitSet();
 		
 		//
-		// Scan Jimple statements
+		// Inspect candidate statements
 		// and record the information we interested in
-		if (Config.reachableMethodsOnly)
+		if (Config.scanThreads > 1)
 		{
-			scanJimpleReachableOnly();
+			inspectCandidatesInParallel(candidateSet.getCandidates());
 		}
 		else
 		{
-			scanJimple();
+			inspectCandidates(candidateSet.getCandidates());
 		}
 		
 		//
@@ -668,16 +450,6 @@ class KeywordInspector
 		return keywordsInPackage;
 	}
 	
-	List<String> getJimpleUsingHashMap()
-	{
-		return hashMapStatHandler.getJimpleUsingHashMap();
-	}
-	
-	Set<String> getLibraryPackageName()
-	{
-		return libraryPackageName;
-	}
-	
 	Set<String> getKeywordsInAppPackage()
 	{
 		return keywordsInAppPackage;
@@ -699,19 +471,18 @@ class KeywordInspector
 		List<String> dataBlockStatWithKeywords = new ArrayList<String>();
 		
 		//
-		// Scan the data block statements list
-		// and pick out the statements with keywords
-		for (String statement : dataBlockStatement)
+		// The raw statements in data blocks with keywords
+		// have been picked out, output their statement lines.
+		// The object ID of each data block is compared exactly.
+		for (DataBlockRawStat rawStat : dataBlockWithKeywordsRawStat)
 		{
-			for (String dataBlockWithKeywordsId : dataBlockWithKeywordsIds)
-			{
-				if (statement.startsWith(dataBlockWithKeywordsId))
-				{
-					dataBlockStatWithKeywords.add(statement);
-				}
-			}
+			dataBlockStatWithKeywords.add(rawStat.statementLine);
 		}
 		
+		//
+		// Keep the same order as data block statement list
+		Collections.sort(dataBlockStatWithKeywords);
+		
 		return dataBlockStatWithKeywords;
 	}
 
@@ -720,7 +491,7 @@ class KeywordInspector
 		Return the raw key argument of a key-value pair operation
 
 	 */
-	private String extractKeyArgOfStat(Unit unit)
+	private static String extractKeyArgOfStat(Unit unit)
 	{
 		//
 		// Here we assume that "unit" is an invocatin of
@@ -738,7 +509,7 @@ class KeywordInspector
 		return the value only if the value is a keyword
 
 	 */
-	private String extractValidKeyArgOfStat(Unit unit)
+	static String extractValidKeyArgOfStat(Unit unit)
 	{
 		String firstArgInStr = extractKeyArgOfStat(unit);
 		
@@ -851,28 +622,21 @@ class KeywordInspector
 			// Unescape the key
 			// constKey = StringUtil.unescapeString(constKey);
 			
-			String stat = rawStat.dataBlockId + ',' + constKey;
+			String stat = rawStat.dataBlockId + "," + constKey;
 			dataBlockStat.add(stat);
 		}
 		
 		return dataBlockStat;
 	}
 	
-	/**
-	 
-		Return the list of key tainted container variables
-		
-		So that we can do data-flow analysis on these variables
-
-	 */
-	List<KeyTaintedVar> getKeyTaintedVars()
+	List<DataBlockRawStat> getDataBlockWithKeywordsRawStat()
 	{
-		return keyTaintedVars;
+		return dataBlockWithKeywordsRawStat;
 	}
 	
-	List<DataBlockRawStat> getDataBlockWithKeywordsRawStat()
+	KeywordDetector getKeywordDetector()
 	{
-		return dataBlockWithKeywordsRawStat;
+		return keywordDetector;
 	}
 	
 	//
@@ -887,7 +651,7 @@ class KeywordInspector
 	 */
 	public String isHit(Unit unit)
 	{
-		return keywordDetector.figureOutKeywordInJimple(unit.toString());
+		return keywordDetector.figureOutKeywordInJimple(unit);
 	}
 }
 
@@ -913,8 +677,33 @@ class JimpleHit
 class DataBlockRawStat
 {
 	Unit statement;
-	String dataBlockId;
+	int dataBlockId;
+	
+	// The statement line in data block statement list
+	String statementLine;
 	
 	// The keyword in current Jimple statement
 	String keyword;
+}
+
+/**
+	
+	Data class for collecting info recorded while inspecting candidates.
+	
+	In parallel inspection, each chunk of candidates is inspected with its own collector,
+	and the collectors are merged in chunk order afterwards.
+
+ */
+class JimpleScanCollector
+{
+	List<String> jimpleWithKeywords = new ArrayList<String>();
+	List<JimpleHit> jimpleHit = new ArrayList<JimpleHit>();
+	List<String> keywordsHit = new ArrayList<String>();
+	List<String> keywordsInPackage = new ArrayList<String>();
+	List<String> keywordsInAppPackage = new ArrayList<String>();
+	List<String> keywordsInLibPackage = new ArrayList<String>();
+	
+	List<String> dataBlockStatement = new ArrayList<String>();
+	List<DataBlockRawStat> dataBlockRawStat = new ArrayList<DataBlockRawStat>();
+	BitSet dataBlockWithKeywordsIds = new BitSet();
 }
\ No newline at end of file
@@ -0,0 +1,197 @@
+package edu.fudan.JimpleKeyword;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import soot.SootClass;
+import soot.SootMethodRef;
+import soot.Type;
+import soot.Unit;
+import soot.Value;
+import soot.jimple.InstanceInvokeExpr;
+import soot.jimple.InvokeExpr;
+import soot.jimple.InvokeStmt;
+
+/**
+	
+	Index of the layout resources set by displayable classes,
+	which is recorded while Jimple statements are scanned.
+	
+	The layout resource of a class is the first argument of
+	the first setContentView or inflate invocation in its methods,
+	in the order of methods in class.
+	So the bodies of a class indexed don't need to be scanned again
+	when its resource ID is looked up.
+	
+	A class is indexed only if all its methods with body are scanned,
+	the other classes are scanned on lookup as before.
+
+ */
+class LayoutResourceIndex
+{
+	// Classes whose methods are all scanned
+	private Set<SootClass> indexedClasses = new HashSet<SootClass>();
+	
+	// Layout resources of the classes indexed,
+	// a class without any layout invocation isn't recorded
+	private Map<SootClass, String> layoutResourceOfClass = new HashMap<SootClass, String>();
+	
+	/**
+	
+		This function checks if given text appears in the Jimple text
+		of an invoke statement, without rendering the statement.
+		
+		The statement is rendered from the base, the method signature
+		and the arguments, and none of the texts checked spans them.
+		So the parts are checked one by one, the cheap ones first.
+	
+	 */
+	private static boolean isMentionedInInvoke(InvokeExpr invokeExpr, String text)
+	{
+		SootMethodRef methodRef = invokeExpr.getMethodRef();
+		if (methodRef.name().contains(text)
+				|| methodRef.declaringClass().getName().contains(text)
+				|| methodRef.returnType().toString().contains(text))
+		{
+			return true;
+		}
+		
+		for (Type parameterType : methodRef.parameterTypes())
+		{
+			if (parameterType.toString().contains(text))
+			{
+				return true;
+			}
+		}
+		
+		if (invokeExpr instanceof InstanceInvokeExpr
+				&& ((InstanceInvokeExpr)invokeExpr).getBase().toString().contains(text))
+		{
+			return true;
+		}
+		
+		for (Value arg : invokeExpr.getArgs())
+		{
+			if (arg.toString().contains(text))
+			{
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	
+		This function checks if a method invoked is
+		setContentView or inflate.
+		
+		These method set the content of an activity
+	
+	 */
+	private static boolean isInvokeOfSetLayoutMethod(InvokeExpr invokeExpr)
+	{
+		// For setContentView method,
+		// Here we only match "setContentView" instead of
+		// full name which contains package name etc.
+		// since setContentView usually appears in virtualinvoke 
+		// and it doesn't contains android framework package name
+		String methodName = invokeExpr.getMethodRef().name();
+		if (methodName.contains("setContentView"))
+		{
+			return true;
+		}
+		
+		//
+		// Matching LayoutInflater.inflate()
+		// The common case is decided by method name and declaring class,
+		// the rest of statement is only checked when they don't decide it
+		if (methodName.contains("inflate")
+				&& invokeExpr.getMethodRef().declaringClass().getName().contains("LayoutInflater"))
+		{
+			return true;
+		}
+		
+		return isMentionedInInvoke(invokeExpr, "inflate")
+				&& isMentionedInInvoke(invokeExpr, "LayoutInflater");
+	}
+	
+	/**
+		
+		Return the layout resource set by a statement,
+		or null if it doesn't invoke setContentView or inflate.
+	
+	 */
+	static String getLayoutResourceOf(Unit unit)
+	{
+		//
+		// We only care about invoke statement
+		if (!(unit instanceof InvokeStmt))
+		{
+			return null;
+		}
+		
+		//
+		// We only care about invoke of setContentView/inflate method
+		InvokeExpr invokeExpr = ((InvokeStmt)unit).getInvokeExpr();
+		if (!isInvokeOfSetLayoutMethod(invokeExpr))
+		{
+			return null;
+		}
+		
+		//
+		// For both setContentView and inflate,
+		// the resource ID is the first argument.
+		return invokeExpr.getArg(0).toString();
+	}
+	
+	/**
+		
+		Record a class whose methods are all scanned
+	
+	 */
+	void recordIndexedClass(SootClass sootClass)
+	{
+		indexedClasses.add(sootClass);
+	}
+	
+	/**
+		
+		Record the layout resources found in scan,
+		the resource recorded first is kept for each class.
+	
+	 */
+	void recordLayoutResources(Map<SootClass, String> layoutResources)
+	{
+		for (Map.Entry<SootClass, String> entry : layoutResources.entrySet())
+		{
+			if (!layoutResourceOfClass.containsKey(entry.getKey()))
+			{
+				layoutResourceOfClass.put(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+	
+	boolean isIndexed(SootClass sootClass)
+	{
+		return indexedClasses.contains(sootClass);
+	}
+	
+	/**
+		
+		Return the layout resource of a class indexed,
+		or null if its methods don't set any layout.
+	
+	 */
+	String getLayoutResource(SootClass sootClass)
+	{
+		return layoutResourceOfClass.get(sootClass);
+	}
+	
+	int getIndexedClassCount()
+	{
+		return indexedClasses.size();
+	}
+}
@@ -2,9 +2,18 @@ package edu.fudan.JimpleKeyword;
 
 import heros.InterproceduralCFG;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
 import java.nio.file.FileSystemNotFoundException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -13,9 +22,16 @@ import java.util.Set;
 
 import org.xmlpull.v1.XmlPullParserException;
 
+import edu.fudan.JimpleKeyword.io.ApkList;
+import edu.fudan.JimpleKeyword.io.DexStringPool;
 import edu.fudan.JimpleKeyword.io.KeywordList;
+import edu.fudan.JimpleKeyword.text.KeywordDetector;
+import edu.fudan.JimpleKeyword.util.MemoryUtil;
 import edu.fudan.JimpleKeyword.util.SootUtil;
+import soot.G;
+import soot.PackManager;
 import soot.Scene;
+import soot.SootClass;
 import soot.SootMethod;
 import soot.Unit;
 import soot.jimple.ReturnStmt;
@@ -26,15 +42,20 @@ import soot.jimple.infoflow.android.InfoflowAndroidConfiguration;
 import soot.jimple.infoflow.android.SetupApplication;
 import soot.jimple.infoflow.android.config.SootConfigForAndroid;
 import soot.jimple.infoflow.android.data.AndroidMethod;
+import soot.jimple.infoflow.android.data.parsers.PermissionMethodParser;
 import soot.jimple.infoflow.android.manifest.ProcessManifest;
+import soot.jimple.infoflow.cfg.DefaultBiDiICFGFactory;
 import soot.jimple.infoflow.data.AccessPath;
 import soot.jimple.infoflow.data.pathBuilders.DefaultPathBuilderFactory;
+import soot.jimple.infoflow.entryPointCreators.IEntryPointCreator;
 import soot.jimple.infoflow.handlers.ResultsAvailableHandler;
 import soot.jimple.infoflow.results.InfoflowResults;
 import soot.jimple.infoflow.solver.cfg.IInfoflowCFG;
 import soot.jimple.infoflow.source.ISourceSinkManager;
 import soot.jimple.infoflow.source.SourceInfo;
+import soot.jimple.infoflow.source.data.ISourceSinkDefinitionProvider;
 import soot.jimple.infoflow.taintWrappers.EasyTaintWrapper;
+import soot.options.Options;
 
 /**
 
@@ -51,15 +72,41 @@ public class Main
 	// Info on APK
 	public static IInfoflowCFG cfgOfApk;
 	
+	// Compact index of Call Graph,
+	// used by the analyses walking up to callers
+	static CallGraphIndex callGraphOfApk;
+	
+	// Index of the classes managing content display,
+	// e.g. sub-classes of Activity
+	static DisplayableClassIndex displayableClassesOfApk;
+	
 	public static String apkPackageName;
 	
 	// The company identifier of an APK is 
 	// extracted from the first 2 parts of package name
 	public static String apkCompanyId;
 	
+	// The snapshot used in place of FlowDroid bootstrap,
+	// null if FlowDroid bootstrap is run
+	static ApkSnapshot apkSnapshot;
+	
+	//
+	// FlowDroid config files parsed once,
+	// they are reused by all APKs in batch mode
+	private static EasyTaintWrapper taintWrapper;
+	private static ISourceSinkDefinitionProvider sourcesAndSinks;
+	
+	//
+	// Suffixes of result files in batch mode.
+	// The results of APP.APK are written to APP.APK.log
+	static final String RESULT_FILE_SUFFIX = ".log";
+	static final String TEMP_RESULT_FILE_SUFFIX = ".part";
+	static final String FAILED_RESULT_FILE_SUFFIX = ".failed";
+	
 	private static void ShowUsage()
 	{
-		System.out.println("Usage: java -jar JimpleKeyword.jar [options] --android-jar ANDROID.JAR APP.APK KEYWORD-LIST.TXT");
+		System.out.println("Usage: java -jar JimpleKeyword.jar [options] --android-jar ANDROID.JAR APP.APK KEYWORD-LIST.TXT [KEYWORD-LIST.TXT ...]");
+		System.out.println("       java -jar JimpleKeyword.jar [options] --android-jar ANDROID.JAR --batch APK-DIR|APK-LIST --output-dir DIR KEYWORD-LIST.TXT [KEYWORD-LIST.TXT ...]");
 		System.out.println("This program is written and tested on Java 1.8");
 		
 		System.out.println("\nOptions:");
@@ -67,6 +114,20 @@ public class Main
 		System.out.println("-a\tDisable API filtering feature, inspect Jimple statement regardless of API it invokes");
 		System.out.println("-p\tEnable API in libraries only filtering. However, the libraries list may be incomplete");
 		System.out.println("-d\tOnly inspect reachable methods.");
+		System.out.println("--cache-size N\tCache keyword verdict of N string constants, 0 disables the cache");
+		System.out.println("--threads N\tScan classes and inspect root callers with N threads");
+		System.out.println("--snapshot-dir DIR\tSave the results of FlowDroid bootstrap in DIR and reuse them for the same APK");
+		System.out.println("--cfg-only\tBuild CFG and Call Graph without running dummy info-flow analysis of FlowDroid");
+		System.out.println("--triage\tSkip the APK if no keyword is in the string pools of its dex files, its result sections are empty");
+		System.out.println("--lazy-bodies\tOnly retrieve the bodies of methods which may contain candidate statements, statement IDs are changed");
+		System.out.println("--lean\tRelease method bodies and FlowDroid solver state once later stages don't need them");
+		System.out.println("--graph-chains\tWrite call chains to root callers as a graph of methods instead of full text of each chain");
+		System.out.println("--batch APK-DIR|APK-LIST\tAnalyze the APKs in a directory or listed in a file, one path per line");
+		System.out.println("--output-dir DIR\tWrite the results of each APK in batch mode to DIR");
+		System.out.println("--workers N\tAnalyze the APKs in batch mode with N worker JVMs");
+		System.out.println("--worker-heap SIZE\tSet max heap size of worker JVMs, e.g. 4g");
+		System.out.println("--apk-timeout SECONDS\tKill the worker JVM if an APK isn't analyzed in SECONDS");
+		System.out.println("--apks-per-worker N\tRestart a worker JVM after it analyzes N APKs, 0 never restarts");
 	}
 	
 	/**
@@ -101,6 +162,30 @@ public class Main
 		}
 	}
 	
+	/**
+	
+		Parse the config files of FlowDroid.
+		
+		The parsed configs are reused by all APKs analyzed,
+		instead of parsing the files again for each APK.
+	
+	 */
+	private static void LoadFlowDroidConfigFiles()
+	{
+		try 
+		{
+			taintWrapper = new EasyTaintWrapper(Config.CONFIG_FILE_TAINT_WRAPPER);
+			sourcesAndSinks = PermissionMethodParser.fromFile(Config.CONFIG_FILE_SOURCES_SINKS);
+		} 
+		catch (IOException e) 
+		{
+			// Unexpected error
+			// since we have checked the path of config files when program launch
+			// Fail-fast
+			throw new RuntimeException("Unexpected IO Error on FlowDroid config files", e);
+		}
+	}
+	
 	private static void AnalyzeApkWithFlowDroid(String androidJar, String apkFile)
 	{
 		//
@@ -116,21 +201,26 @@ public class Main
 			throw new FileSystemNotFoundException("APK File not found: " + apkFile);
 		}
 		
+		boolean forceAndroidJar = androidJarFile.isFile();
+		
+		//
+		// Reuse the results of previous run on the same APK if possible
+		File snapshotFile = null;
+		if (Config.snapshotDir != null)
+		{
+			snapshotFile = new File(Config.snapshotDir, ApkSnapshot.computeKey(androidJar, apkFile) + ".snapshot");
+			if (LoadApkSnapshot(androidJar, forceAndroidJar, apkFile, snapshotFile))
+			{
+				return;
+			}
+		}
+		
 		//
 		// Initialize Soot and FlowDroid
 		SetupApplication app = new SetupApplication(androidJar, apkFile);
 		
-		try 
-		{
-			app.setTaintWrapper(new EasyTaintWrapper(Config.CONFIG_FILE_TAINT_WRAPPER));
-		} 
-		catch (IOException e) 
-		{
-			// Unexpected error
-			// since we have checked the path of config file when program launch
-			// Fail-fast
-			throw new RuntimeException("Unexpected IO Error on " + Config.CONFIG_FILE_TAINT_WRAPPER, e);
-		}
+		// Each analysis gets its own copy of the parsed taint wrapper
+		app.setTaintWrapper(new EasyTaintWrapper(taintWrapper));
 		
 		//
 		// Compute CFG and Call Graph 
@@ -140,7 +230,7 @@ public class Main
 		// Construct source-sink manager
 		try 
 		{
-			app.calculateSourcesSinksEntrypoints(Config.CONFIG_FILE_SOURCES_SINKS);
+			app.calculateSourcesSinksEntrypoints(sourcesAndSinks);
 		} 
 		catch (IOException e) 
 		{
@@ -157,28 +247,156 @@ public class Main
 		}
 		
 		//
-		// Run info-flow analysis to construct CFG and Call Graph
+		// Construct CFG and Call Graph
+		InfoflowAndroidConfiguration infoFlowConfig = new InfoflowAndroidConfiguration();
+		infoFlowConfig.setCodeEliminationMode(CodeEliminationMode.NoCodeElimination);
+		if (Config.cfgOnlyBootstrap)
+		{
+			//
+			// Build CFG and Call Graph directly
+			// without the dummy info-flow analysis
+			BuildCfgWithoutTaintAnalysis(androidJar, forceAndroidJar, apkFile, app.getEntryPointCreator(), infoFlowConfig);
+		}
+		else
+		{
+			//
+			// Build CFG and Call Graph with the dummy info-flow analysis
+			BuildCfgWithDummyTaintAnalysis(androidJar, forceAndroidJar, apkFile, app.getEntryPointCreator(), infoFlowConfig);
+		}
 		
 		//
-		// Here we HACKed infoflow computation
-		// in order to force FlowDroid always found source -> sink path.
+		// Check if we got CFG of app
+		if (cfgOfApk == null)
+		{
+			System.err.println("UNEXPECTED EXCEPTION: CFG of APK isn't generated.");
+			System.err.println("In current version of FlowDroid, without any sources-sinks, we can't got CFG of APK");
+			System.err.println("and we give FlowDroid some dummy source -> sink path currently");
+			System.err.println("It's strange that we didn't get CFG of APK.");
+			System.err.println("\nAnalysis of APK Aborted.");
+			
+			throw new RuntimeException("CFG of APK isn't generated: " + apkFile);
+		}
 		
-		boolean forceAndroidJar = androidJarFile.isFile();
-		InfoflowAndroidConfiguration infoFlowConfig = new InfoflowAndroidConfiguration();
-		infoFlowConfig.setCodeEliminationMode(CodeEliminationMode.NoCodeElimination);
-		DefaultPathBuilderFactory pathBuilderFactory =
-				new DefaultPathBuilderFactory(infoFlowConfig.getPathBuilder(), infoFlowConfig.getComputeResultPaths());
-		Infoflow infoFlow = new Infoflow(androidJar, forceAndroidJar, null, pathBuilderFactory);
+		//
+		// The CFG handed over by info-flow analysis keeps the caches filled by its solver.
+		// In memory-lean mode, a fresh CFG is built on the same Call Graph instead,
+		// so that the solver state can be collected.
+		if (Config.memoryLean && !Config.cfgOnlyBootstrap)
+		{
+			cfgOfApk = new DefaultBiDiICFGFactory().buildBiDirICFG(
+					infoFlowConfig.getCallgraphAlgorithm(), infoFlowConfig.getEnableExceptionTracking());
+		}
+		
+		//
+		// Process manifest file extract relating info
+		
+		// Process manifest file
+		ProcessManifest manifestHandler;
 		try 
 		{
-			infoFlow.setTaintWrapper(new EasyTaintWrapper(Config.CONFIG_FILE_TAINT_WRAPPER));
-		} 
+			manifestHandler = new ProcessManifest(apkFile);
+		}
 		catch (IOException e) 
 		{
 			// Unexpected error, Fail-fast
-			throw new RuntimeException("Unexpected IO Exception:", e);
+			throw new RuntimeException("Unexpected IO error on specified APK file", e);
+		} 
+		catch (XmlPullParserException e) 
+		{
+			// Unexpected error, Fail-fast
+			throw new RuntimeException("Unexpected XML Parsing error on specified APK file", e);
+		}
+		
+		// Extract info from manifest file
+		Main.apkPackageName = manifestHandler.getPackageName();
+		Main.apkCompanyId = SootUtil.getLeadingPartsOfName(Main.apkPackageName, 2);
+		
+		//
+		// Save the results for later runs on the same APK
+		if (snapshotFile != null)
+		{
+			ApkSnapshot snapshot = ApkSnapshot.capture(Main.apkPackageName, forceAndroidJar);
+			if (snapshot != null)
+			{
+				snapshot.save(snapshotFile);
+			}
+		}
+	}
+	
+	/**
+	
+		Load the snapshot of FlowDroid bootstrap results
+		and restore them to Soot.
+		
+		If there is no valid snapshot, false is returned,
+		and FlowDroid bootstrap should be run as usual.
+	
+	 */
+	private static boolean LoadApkSnapshot(String androidJar, boolean forceAndroidJar, String apkFile, File snapshotFile)
+	{
+		ApkSnapshot snapshot = ApkSnapshot.load(snapshotFile);
+		if (snapshot == null)
+		{
+			return false;
+		}
+		
+		//
+		// Check the options before Scene is touched
+		if (!snapshot.isTakenWithOptions(forceAndroidJar))
+		{
+			System.err.println("[WARN] Snapshot taken with other options ignored: " + snapshotFile.getPath());
+			return false;
+		}
+		
+		//
+		// Load the classes of APK with Soot,
+		// the Call Graph is restored from snapshot instead of computed
+		InitializeSootForApk(androidJar, forceAndroidJar, apkFile);
+		Scene.v().loadNecessaryClasses();
+		if (!snapshot.restore())
+		{
+			//
+			// The bodies of methods have been retrieved while checking the snapshot,
+			// reset Soot so that FlowDroid bootstrap starts from a clean state
+			System.err.println("[WARN] Snapshot ignored: " + snapshotFile.getPath());
+			G.reset();
+			return false;
 		}
 		
+		//
+		// Construct CFG on the Call Graph restored
+		InfoflowAndroidConfiguration infoFlowConfig = new InfoflowAndroidConfiguration();
+		cfgOfApk = new DefaultBiDiICFGFactory().buildBiDirICFG(
+				infoFlowConfig.getCallgraphAlgorithm(), infoFlowConfig.getEnableExceptionTracking());
+		
+		Main.apkPackageName = snapshot.apkPackageName;
+		Main.apkCompanyId = SootUtil.getLeadingPartsOfName(Main.apkPackageName, 2);
+		Main.apkSnapshot = snapshot;
+		
+		System.err.println("[INFO] FlowDroid bootstrap skipped, snapshot loaded: " + snapshotFile.getPath());
+		return true;
+	}
+	
+	/**
+	
+		Build CFG and Call Graph of APK by running FlowDroid info-flow analysis
+		with dummy sources and sinks.
+		
+		The CFG is saved to cfgOfApk when the results are available.
+	
+	 */
+	private static void BuildCfgWithDummyTaintAnalysis(String androidJar, boolean forceAndroidJar, String apkFile,
+			IEntryPointCreator entryPointCreator, InfoflowAndroidConfiguration infoFlowConfig)
+	{
+		//
+		// Here we HACKed infoflow computation
+		// in order to force FlowDroid always found source -> sink path.
+		
+		DefaultPathBuilderFactory pathBuilderFactory =
+				new DefaultPathBuilderFactory(infoFlowConfig.getPathBuilder(), infoFlowConfig.getComputeResultPaths());
+		Infoflow infoFlow = new Infoflow(androidJar, forceAndroidJar, null, pathBuilderFactory);
+		infoFlow.setTaintWrapper(new EasyTaintWrapper(taintWrapper));
+		
 		infoFlow.addResultsAvailableHandler(new ResultsAvailableHandler() 
 		{
 			@Override
@@ -198,7 +416,7 @@ public class Main
 		// HACK: The SourceSinkManager is HACKED
 		// so that we force to give FlowDroid some dummy source -> sink path.
 		
-		infoFlow.computeInfoflow(apkFile, androidJar, app.getEntryPointCreator(), new ISourceSinkManager() 
+		infoFlow.computeInfoflow(apkFile, androidJar, entryPointCreator, new ISourceSinkManager() 
 		{
 			@Override
 			public SourceInfo getSourceInfo(Stmt arg0,
@@ -228,207 +446,146 @@ public class Main
 			}
 			
 		});
+	}
+	
+	/**
+	
+		Build CFG and Call Graph of APK without info-flow analysis.
+		
+		Soot is set up the way FlowDroid sets it up for info-flow analysis,
+		then the dummy main method, SPARK call graph and ICFG are built directly.
+		So we don't pay for the taint propagation whose results are thrown away.
+	
+	 */
+	private static void BuildCfgWithoutTaintAnalysis(String androidJar, boolean forceAndroidJar, String apkFile,
+			IEntryPointCreator entryPointCreator, InfoflowAndroidConfiguration infoFlowConfig)
+	{
+		InitializeSootForApk(androidJar, forceAndroidJar, apkFile);
 		
 		//
-		// Check if we got CFG of app
-		if (cfgOfApk == null)
+		// Load classes, including the ones required by dummy main method
+		Collection<String> requiredClasses = entryPointCreator.getRequiredClasses();
+		for (String className : requiredClasses)
 		{
-			System.err.println("UNEXPECTED EXCEPTION: CFG of APK isn't generated.");
-			System.err.println("In current version of FlowDroid, without any sources-sinks, we can't got CFG of APK");
-			System.err.println("and we give FlowDroid some dummy source -> sink path currently");
-			System.err.println("It's strange that we didn't get CFG of APK.");
-			System.err.println("\nExecution Aborted.");
-			
-			System.exit(Config.EXIT_ERROR);
+			Scene.v().addBasicClass(className, SootClass.BODIES);
+		}
+		Scene.v().loadNecessaryClasses();
+		for (String className : requiredClasses)
+		{
+			Scene.v().forceResolve(className, SootClass.BODIES);
 		}
 		
 		//
-		// Process manifest file extract relating info
+		// Use dummy main method as the only entry point
+		SootMethod dummyMain = entryPointCreator.createDummyMain();
+		Scene.v().setEntryPoints(Collections.singletonList(dummyMain));
 		
-		// Process manifest file
-		ProcessManifest manifestHandler;
-		try 
+		//
+		// Construct Call Graph with SPARK
+		PackManager.v().getPack("cg").apply();
+		
+		//
+		// Construct CFG on the Call Graph
+		cfgOfApk = new DefaultBiDiICFGFactory().buildBiDirICFG(
+				infoFlowConfig.getCallgraphAlgorithm(), infoFlowConfig.getEnableExceptionTracking());
+	}
+	
+	/**
+	
+		Reset Soot and set it up for whole program analysis on APK,
+		the way FlowDroid sets it up for info-flow analysis.
+		
+		Classes aren't loaded here.
+	
+	 */
+	private static void InitializeSootForApk(String androidJar, boolean forceAndroidJar, String apkFile)
+	{
+		G.reset();
+		Options.v().set_no_bodies_for_excluded(true);
+		Options.v().set_allow_phantom_refs(true);
+		Options.v().set_output_format(Options.output_format_none);
+		Options.v().set_whole_program(true);
+		Options.v().set_process_dir(Collections.singletonList(apkFile));
+		if (forceAndroidJar)
 		{
-			manifestHandler = new ProcessManifest(apkFile);
+			Options.v().set_force_android_jar(androidJar);
 		}
-		catch (IOException e) 
-		{
-			// Unexpected error, Fail-fast
-			throw new RuntimeException("Unexpected IO error on specified APK file", e);
-		} 
-		catch (XmlPullParserException e) 
+		else
 		{
-			// Unexpected error, Fail-fast
-			throw new RuntimeException("Unexpected XML Parsing error on specified APK file", e);
+			Options.v().set_android_jars(androidJar);
 		}
+		Options.v().set_src_prec(Options.src_prec_apk);
 		
-		// Extract info from manifest file
-		Main.apkPackageName = manifestHandler.getPackageName();
-		Main.apkCompanyId = SootUtil.getLeadingPartsOfName(Main.apkPackageName, 2);
+		// Use SPARK for call graph construction
+		Options.v().setPhaseOption("cg.spark", "on");
+		Options.v().setPhaseOption("cg.spark", "string-constants:true");
+		
+		// Apply the Android specific options, e.g. excluded packages
+		new SootConfigForAndroid().setSootOptions(Options.v());
 	}
 	
-	public static void main(String[] args) 
+	/**
+	
+		Inspect the candidate statements with given keyword list
+		and output the results.
+		
+		The root callers resolved are memoized in root caller index,
+		which is shared by keyword lists.
+	
+	 */
+	private static void OutputResultsOfKeywordList(KeywordDetector keywordDetector, JimpleCandidateSet candidateSet,
+			List<String> keyTaintedSinks, RootCallerIndex rootCallerIndex)
 	{
 		//
-		// Check if required files and libraries exist		
-		CheckDependencies();
+		// Find out the Jimple statements contains keyword
+		KeywordInspector keywordInspector = new KeywordInspector(keywordDetector, candidateSet);
 		
 		//
-		// Parse command line parameters
+		// Report the usage of string const cache
+		// so that we can tune the cache size.
+		// In batch mode the cache is shared by APKs, so the counts are accumulated.
+		System.err.println(String.format("[INFO] String const cache: %d hits, %d misses",
+				keywordDetector.getCacheHitCount(), keywordDetector.getCacheMissCount()));
 		
-		// If no parameters supplied, print usage and exit
-		if (args.length <= 1)
+		//
+		// Output the list of Jimple statements with keywords
+		List<String> jimpleWithKeywords = keywordInspector.getJimpleWithKeywords();
+		System.out.println("Jimple with Keywords in APK >>>>>>>>>>>");
+		for (String curJimple : jimpleWithKeywords)
 		{
-			ShowUsage();
-			
-			// Exit normally
-			return;
+			System.out.println(curJimple);
 		}
+		System.out.println("Jimple with Keywords in APK <<<<<<<<<<");
 		
-		String apkFile = null;
-		String androidJar = null;
-		String keywordListFileName = null;
+		//
+		// Output the list of keywords hit
+		Set<String> keywordsHit = keywordInspector.getKeywordsHit();
+		System.out.println("Keywords Hit >>>>>>>>>>");
+		for (String curKeyword : keywordsHit)
+		{
+			System.out.println(curKeyword);
+		}
+		System.out.println("Keywords Hit <<<<<<<<<<");
 		
-		// Get ANDROID.JAR and APP.APK
-		for (int i=0; i<args.length; i++)
+		//
+		// Output the list of keywords in package
+		Set<String> keywordsInPackage = keywordInspector.getKeywordsInPackage();
+		System.out.println("Keywords in Package >>>>>>>>>>");
+		for (String curKeywordsInPackage : keywordsInPackage)
 		{
-			//
-			// Parse input file arguments
-			if (args[i].equals("--android-jar")) 
-			{
-				// Get the path of ANDROID.JAR
-				// and skip next argument
-				i++;
-				androidJar = args[i];
-			}
-			else if (args[i].endsWith(".apk")) 
-			{
-				apkFile = args[i];
-			}
-			else if (args[i].endsWith(".txt"))
-			{
-				keywordListFileName = args[i];
-			}
-			
-			//
-			// Parse options
-			else if (args[i].equals("-m"))
-			{
-				Config.recordJimpleUsingHashMap = true;
-			}
-			else if (args[i].equals("-a"))
+			System.out.println(curKeywordsInPackage);
+		}
+		System.out.println("Keywords in Package <<<<<<<<<<");
+		
+		//
+		// Output Jimple statements using HashMap class
+		if (Config.recordJimpleUsingHashMap)
+		{
+			List<String> jimpleUsingHashMap = candidateSet.getJimpleUsingHashMap();
+			System.out.println("Jimple using HashMap >>>>>>>>>>");
+			for (String curJimpleUsingHashMap : jimpleUsingHashMap)
 			{
-				Config.interestedApiOnly = false;
-			}
-			else if (args[i].equals("-p"))
-			{
-				Config.apiInLibrariesOnly = true;
-			}
-			else if (args[i].equals("-d"))
-			{
-				Config.reachableMethodsOnly = true;
-			}
-			
-			//
-			// Default handler for other arguments
-			else
-			{
-				System.err.println("[WARN] Unknown argument ignored: " + args[i]);
-			}
-		}
-		
-		// Check if some parameters not supplied
-		if (apkFile == null)
-		{
-			System.err.println("No APK file supplied\n");
-			ShowUsage();
-			throw new IllegalArgumentException("APK File parameter is invalid");
-		}
-		if (androidJar == null)
-		{
-			System.err.println("No ANDROID.JAR file path supplied\n");
-			ShowUsage();
-			throw new IllegalArgumentException("ANDROID.JAR file parameter is invalid");
-		}
-		if (keywordListFileName == null)
-		{
-			System.err.println("No KEYWORD-LIST.TXT file supplied\n");
-			ShowUsage();
-			throw new IllegalArgumentException("KEYWORD-LIST.TXT file parameter is invalid");
-		}
-		
-		// Check if parameters are valid
-		File apk = new File(apkFile);
-		if (!apk.isFile())
-		{
-			System.err.println("APK File doesn't exist: " + apkFile);
-			throw new FileSystemNotFoundException("Specified APK File doesn't exist");
-		}
-		File androidJarFile = new File(androidJar);
-		if (!androidJarFile.isDirectory())
-		{
-			System.err.println("ANDROID.JAR path doesn't exist: " + androidJar);
-			throw new FileSystemNotFoundException("ANDROID.JAR path doesn't exist");
-		}
-		File keywordListFile = new File(keywordListFileName);
-		if (!keywordListFile.isFile())
-		{
-			System.err.println("KEYWORD-LIST.TXT path doesn't exist: " + keywordListFileName);
-			throw new FileSystemNotFoundException("KEYWORD-LIST.TXT path doesn't exist");
-		}
-		
-		//
-		// Analyze APK with FlowDroid
-		// The analysis result of FlowDroid is stored in Scene class of Soot.
-		AnalyzeApkWithFlowDroid(androidJar, apkFile);
-		
-		//
-		// Load keyword list
-		KeywordList keywordList = new KeywordList(keywordListFileName);
-		
-		//
-		// Find out the Jimple statements contains keyword
-		KeywordInspector keywordInspector = new KeywordInspector(keywordList);
-		
-		//
-		// Output the list of Jimple statements with keywords
-		List<String> jimpleWithKeywords = keywordInspector.getJimpleWithKeywords();
-		System.out.println("Jimple with Keywords in APK >>>>>>>>>>>");
-		for (String curJimple : jimpleWithKeywords)
-		{
-			System.out.println(curJimple);
-		}
-		System.out.println("Jimple with Keywords in APK <<<<<<<<<<");
-		
-		//
-		// Output the list of keywords hit
-		Set<String> keywordsHit = keywordInspector.getKeywordsHit();
-		System.out.println("Keywords Hit >>>>>>>>>>");
-		for (String curKeyword : keywordsHit)
-		{
-			System.out.println(curKeyword);
-		}
-		System.out.println("Keywords Hit <<<<<<<<<<");
-		
-		//
-		// Output the list of keywords in package
-		Set<String> keywordsInPackage = keywordInspector.getKeywordsInPackage();
-		System.out.println("Keywords in Package >>>>>>>>>>");
-		for (String curKeywordsInPackage : keywordsInPackage)
-		{
-			System.out.println(curKeywordsInPackage);
-		}
-		System.out.println("Keywords in Package <<<<<<<<<<");
-		
-		//
-		// Output Jimple statements using HashMap class
-		if (Config.recordJimpleUsingHashMap)
-		{
-			List<String> jimpleUsingHashMap = keywordInspector.getJimpleUsingHashMap();
-			System.out.println("Jimple using HashMap >>>>>>>>>>");
-			for (String curJimpleUsingHashMap : jimpleUsingHashMap)
-			{
-				System.out.println(curJimpleUsingHashMap);
+				System.out.println(curJimpleUsingHashMap);
 			}
 			System.out.println("Jimple using HashMap <<<<<<<<<<");			
 		}
@@ -436,7 +593,8 @@ public class Main
 		//
 		// Find out and print the root caller classes
 		List<JimpleHit> jimpleHit = keywordInspector.getJimpleHit();
-		RootCallerInspector rootCallerInspector = new RootCallerInspector(jimpleHit);
+		RootCallerInspector rootCallerInspector = new RootCallerInspector(jimpleHit, rootCallerIndex,
+				candidateSet.getLayoutResourceIndex());
 		
 		Set<String> rootActivityClassInfo = rootCallerInspector.getRootActivityClassInfo();
 		System.out.println("Root Caller Activity Classes >>>>>>>>>>");
@@ -448,7 +606,7 @@ public class Main
 		
 		//
 		// Print the names of library packages
-		Set<String> libraryPackageName = keywordInspector.getLibraryPackageName();
+		Set<String> libraryPackageName = candidateSet.getLibraryPackageName();
 		System.out.println("Library Packages >>>>>>>>>>");
 		for (String curPackageName : libraryPackageName)
 		{
@@ -507,30 +665,25 @@ public class Main
 		System.out.println("Simplified Data Blocks <<<<<<<<<<");
 		
 		//
-		// Do key taint tag data-flow analysis
-		List<KeyTaintedVar> keyTaintedVars = keywordInspector.getKeyTaintedVars();
-		KeyTaintAnalyzer keyTaintAnalyzer = new KeyTaintAnalyzer(keyTaintedVars);
+		// Output the results of key taint tag data-flow analysis
 		System.out.println("Key Tainted Sinks (Incorrect) >>>>>>>>>>");
-		List<String> sinkInfoInStr = keyTaintAnalyzer.getSinkOutput();
-		for (String curSinkInfo : sinkInfoInStr)
+		for (String curSinkInfo : keyTaintedSinks)
 		{
 			System.out.println(curSinkInfo);
 		}
 		System.out.println("Key Tainted Sinks (Incorrect) <<<<<<<<<<");
 		
-		String rootCallerMethodInfo = rootCallerInspector.getRootCallerMethodInfo();
 		System.out.println("Root Caller Method >>>>>>>>>>");
-		System.out.print(rootCallerMethodInfo);
+		rootCallerInspector.writeRootCallerMethodInfo(System.out);
 		System.out.println("Root Caller Method <<<<<<<<<<");
 		
 		//
 		// Find out the root caller methods of data blocks
 		List<DataBlockRawStat> dataBlockWithKwRawStat = keywordInspector.getDataBlockWithKeywordsRawStat();
-		RootCallerMethodInspector rootCallerMethodInspector = new RootCallerMethodInspector(dataBlockWithKwRawStat);
+		RootCallerMethodInspector rootCallerMethodInspector = new RootCallerMethodInspector(dataBlockWithKwRawStat, rootCallerIndex);
 		
-		String rootCallerMethodOfDataBlocks = rootCallerMethodInspector.getRootCallerMethodInfo();
 		System.out.println("Root Caller Method of Data Blocks >>>>>>>>>>");
-		System.out.print(rootCallerMethodOfDataBlocks);
+		rootCallerMethodInspector.writeRootCallerMethodInfo(System.out);
 		System.out.println("Root Caller Method of Data Blocks <<<<<<<<<<");
 		
 		//
@@ -544,6 +697,717 @@ public class Main
 			System.out.println(curSensitiveDataInfo);
 		}
 		System.out.println("TDroid Sensitive Data <<<<<<<<<<");
+	}
+	
+	/**
+	
+		Output the sections of a keyword list without any result,
+		in the same order as OutputResultsOfKeywordList.
+		
+		It's used for the APK skipped by dex string triage,
+		which can't hit any keyword.
+	
+	 */
+	private static void OutputEmptyResultsOfKeywordList()
+	{
+		System.out.println("Jimple with Keywords in APK >>>>>>>>>>>");
+		System.out.println("Jimple with Keywords in APK <<<<<<<<<<");
+		OutputEmptySection("Keywords Hit");
+		OutputEmptySection("Keywords in Package");
+		if (Config.recordJimpleUsingHashMap)
+		{
+			OutputEmptySection("Jimple using HashMap");
+		}
+		OutputEmptySection("Root Caller Activity Classes");
+		OutputEmptySection("Library Packages");
+		OutputEmptySection("Keywords in App Package");
+		OutputEmptySection("Keywords in Lib Package");
+		OutputEmptySection("Raw Data Block");
+		OutputEmptySection("Data Block with Keywords");
+		OutputEmptySection("Keywords in Data Blocks");
+		OutputEmptySection("Simplified Data Blocks");
+		OutputEmptySection("Key Tainted Sinks (Incorrect)");
+		OutputEmptySection("Root Caller Method");
+		OutputEmptySection("Root Caller Method of Data Blocks");
+		OutputEmptySection("TDroid Sensitive Data");
+	}
+	
+	private static void OutputEmptySection(String sectionName)
+	{
+		System.out.println(sectionName + " >>>>>>>>>>");
+		System.out.println(sectionName + " <<<<<<<<<<");
+	}
+	
+	/**
+	
+		Check if the string pools of dex files in APK contain any keyword.
+		
+		The string constants in Jimple statements all come from the string pools,
+		so an APK without keyword in them can't hit any keyword,
+		and the Soot analysis on it can be skipped.
+		
+		If the dex files can't be read, true is returned
+		so that the APK is analyzed as usual.
+	
+	 */
+	private static boolean TriageApkByDexStrings(String apkFile, List<KeywordDetector> keywordDetectors)
+	{
+		long triageStartTime = System.currentTimeMillis();
+		
+		DexStringPool dexStringPool;
+		try
+		{
+			dexStringPool = new DexStringPool(apkFile);
+		}
+		catch (RuntimeException e)
+		{
+			System.err.println("[WARN] Dex string triage skipped, failed to read dex files: " + e);
+			return true;
+		}
+		
+		//
+		// Check strings until a keyword is found,
+		// the rest of strings aren't even decoded
+		int checkedStringCount = 0;
+		String keywordFound = null;
+		for (String curString : dexStringPool)
+		{
+			checkedStringCount++;
+			for (KeywordDetector keywordDetector : keywordDetectors)
+			{
+				keywordFound = keywordDetector.figureOutKeywordInString(curString);
+				if (keywordFound != null)
+				{
+					break;
+				}
+			}
+			if (keywordFound != null)
+			{
+				break;
+			}
+		}
+		
+		System.err.println(String.format("[INFO] Dex string triage: %d of %d strings in %d dex files checked in %d ms, %s",
+				checkedStringCount, dexStringPool.getStringCount(), dexStringPool.getDexFileCount(),
+				System.currentTimeMillis() - triageStartTime,
+				keywordFound != null ? "keyword found: " + keywordFound : "no keyword found"));
+		
+		return keywordFound != null;
+	}
+	
+	/**
+	
+		Index the methods in dex files which don't need to be jimplified.
+		
+		If the dex files can't be read, null is returned
+		so that all methods are scanned as usual.
+	
+	 */
+	private static DexMethodIndex BuildDexMethodIndex(String apkFile, JimpleSelector jimpleSelector)
+	{
+		long indexStartTime = System.currentTimeMillis();
+		
+		DexMethodIndex dexMethodIndex;
+		try
+		{
+			dexMethodIndex = new DexMethodIndex(apkFile, jimpleSelector);
+		}
+		catch (RuntimeException e)
+		{
+			System.err.println("[WARN] Lazy method bodies disabled, failed to read dex files: " + e);
+			return null;
+		}
+		
+		System.err.println(String.format("[INFO] Dex method index: %d of %d methods ruled out in %d ms",
+				dexMethodIndex.getRuledOutMethodCount(), dexMethodIndex.getIndexedMethodCount(),
+				System.currentTimeMillis() - indexStartTime));
+		
+		return dexMethodIndex;
+	}
+	
+	/**
+	
+		Report the time and peak heap of an analysis phase,
+		then reset the peak heap for next phase.
+	
+	 */
+	private static void ReportPhaseCost(String phaseName, long phaseStartTime)
+	{
+		System.err.println(String.format("[INFO] %s: %d ms, peak heap %d MB",
+				phaseName, System.currentTimeMillis() - phaseStartTime, MemoryUtil.getPeakHeapUsageInMB()));
+		MemoryUtil.resetPeakHeapUsage();
+	}
+	
+	/**
+	
+		Analyze an APK and output the results of each keyword list.
+		
+		The API lists and keyword lists parsed are passed in,
+		so that they are reused by the APKs in batch mode.
+	
+	 */
+	private static void AnalyzeApk(String androidJar, String apkFile, JimpleSelector jimpleSelector,
+			List<String> keywordListFileNames, List<KeywordDetector> keywordDetectors)
+	{
+		//
+		// Skip the APK early if it can't hit any keyword
+		if (Config.dexStringTriage && !TriageApkByDexStrings(apkFile, keywordDetectors))
+		{
+			//
+			// Output the sections of each keyword list empty,
+			// so that skipped APKs share the output format with analyzed ones
+			System.err.println("[INFO] No keyword in string pools, analysis skipped");
+			for (String keywordListFileName : keywordListFileNames)
+			{
+				if (keywordListFileNames.size() > 1)
+				{
+					System.out.println("Keyword List " + keywordListFileName + " >>>>>>>>>>");
+				}
+				
+				OutputEmptyResultsOfKeywordList();
+				
+				if (keywordListFileNames.size() > 1)
+				{
+					System.out.println("Keyword List " + keywordListFileName + " <<<<<<<<<<");
+				}
+			}
+			return;
+		}
+		
+		//
+		// Analyze APK with FlowDroid
+		// The analysis result of FlowDroid is stored in Scene class of Soot.
+		long bootstrapStartTime = System.currentTimeMillis();
+		MemoryUtil.resetPeakHeapUsage();
+		
+		AnalyzeApkWithFlowDroid(androidJar, apkFile);
+		
+		//
+		// Report the cost of FlowDroid bootstrap
+		// so that the CFG only mode can be compared with the default one.
+		// The costs of later phases are reported as well,
+		// so that memory-lean mode can be compared with the default one.
+		ReportPhaseCost(String.format("FlowDroid bootstrap (%s)",
+				apkSnapshot != null ? "snapshot" : Config.cfgOnlyBootstrap ? "CFG only" : "dummy info-flow"),
+				bootstrapStartTime);
+		
+		//
+		// Index the Call Graph once,
+		// so the walks up to callers don't query the ICFG repeatedly
+		long indexStartTime = System.currentTimeMillis();
+		callGraphOfApk = new CallGraphIndex();
+		System.err.println(String.format("[INFO] Call graph index: %d methods, %d caller statements, %d statements, about %d KB",
+				callGraphOfApk.getMethodCount(), callGraphOfApk.getCallerCount(), callGraphOfApk.getUnitCount(),
+				callGraphOfApk.getFootprintInBytes() / 1024));
+		ReportPhaseCost("Call graph index", indexStartTime);
+		
+		//
+		// Index the displayable classes once,
+		// so the class hierarchy isn't walked up for each check
+		displayableClassesOfApk = new DisplayableClassIndex();
+		
+		//
+		// Scan Jimple statements once,
+		// the candidate statements are shared by keyword lists
+		long scanStartTime = System.currentTimeMillis();
+		DexMethodIndex dexMethodIndex = null;
+		if (Config.lazyMethodBodies && !Config.reachableMethodsOnly)
+		{
+			dexMethodIndex = BuildDexMethodIndex(apkFile, jimpleSelector);
+		}
+		JimpleCandidateSet candidateSet = new JimpleCandidateSet(jimpleSelector, dexMethodIndex);
+		System.err.println(String.format("[INFO] Points-to queries saved by memoization: %d",
+				candidateSet.getSavedPointsToQueries()));
+		ReportPhaseCost(String.format("Jimple scan (%d bodies released)",
+				candidateSet.getBodyTracker().getReleasedBodyCount()), scanStartTime);
+		
+		//
+		// Do key taint tag data-flow analysis.
+		// It doesn't depend on keyword list and modifies the tags of statements,
+		// so it's done only once.
+		long keyTaintStartTime = System.currentTimeMillis();
+		List<KeyTaintedVar> keyTaintedVars = candidateSet.getKeyTaintedVars();
+		KeyTaintAnalyzer keyTaintAnalyzer = new KeyTaintAnalyzer(keyTaintedVars, candidateSet.getBodyTracker());
+		List<String> keyTaintedSinks = keyTaintAnalyzer.getSinkOutput();
+		ReportPhaseCost("Key taint analysis", keyTaintStartTime);
+		
+		//
+		// Output the results of each keyword list
+		long outputStartTime = System.currentTimeMillis();
+		RootCallerIndex rootCallerIndex = new RootCallerIndex(callGraphOfApk);
+		for (int i=0; i<keywordListFileNames.size(); i++)
+		{
+			String keywordListFileName = keywordListFileNames.get(i);
+			if (keywordListFileNames.size() > 1)
+			{
+				System.out.println("Keyword List " + keywordListFileName + " >>>>>>>>>>");
+			}
+			
+			OutputResultsOfKeywordList(keywordDetectors.get(i), candidateSet, keyTaintedSinks, rootCallerIndex);
+			
+			if (keywordListFileNames.size() > 1)
+			{
+				System.out.println("Keyword List " + keywordListFileName + " <<<<<<<<<<");
+			}
+		}
+		ReportPhaseCost("Keyword inspection and root caller analysis", outputStartTime);
+	}
+	
+	/**
+	
+		Clear the app-wide status on analyzed APK
+		and release the analysis results in Soot,
+		so that next APK is analyzed from a clean state.
+	
+	 */
+	private static void ResetApkState(JimpleSelector jimpleSelector)
+	{
+		cfgOfApk = null;
+		callGraphOfApk = null;
+		displayableClassesOfApk = null;
+		apkPackageName = null;
+		apkCompanyId = null;
+		apkSnapshot = null;
+		
+		jimpleSelector.clearInterestedApiVerdicts();
+		G.reset();
+	}
+	
+	/**
+	
+		Analyze an APK in batch mode,
+		the results are written to its own file in output directory.
+		
+		If the analysis fails, the reason is returned,
+		otherwise null is returned.
+		The app-wide status is cleared in either case.
+	
+	 */
+	static String AnalyzeApkInBatch(String androidJar, String apkFile, File outputDir,
+			JimpleSelector jimpleSelector, List<String> keywordListFileNames, List<KeywordDetector> keywordDetectors)
+	{
+		//
+		// Results are written to a temp file first,
+		// and it is renamed when the analysis of APK ends.
+		// So a result file without suffix is always complete.
+		File tempResultFile = GetResultFile(outputDir, apkFile, TEMP_RESULT_FILE_SUFFIX);
+		PrintStream resultOut;
+		try 
+		{
+			resultOut = new PrintStream(new BufferedOutputStream(new FileOutputStream(tempResultFile)));
+		} 
+		catch (FileNotFoundException e) 
+		{
+			//
+			// Only current APK is failed, e.g. its file name is too long,
+			// the batch goes on with next APK
+			System.err.println("[WARN] Batch: failed to open result file of " + apkFile + ": " + e);
+			return e.toString();
+		}
+		
+		System.err.println("[INFO] Batch: analyzing " + apkFile);
+		String failureReason = null;
+		PrintStream consoleOut = System.out;
+		System.setOut(resultOut);
+		try
+		{
+			AnalyzeApk(androidJar, apkFile, jimpleSelector, keywordListFileNames, keywordDetectors);
+		}
+		catch (Throwable e)
+		{
+			//
+			// Isolate the failure of current APK.
+			// Errors such as OutOfMemoryError are caught as well,
+			// since the memory is released when Soot is reset.
+			System.err.println("[WARN] Batch: analysis failed on " + apkFile + ": " + e);
+			e.printStackTrace(resultOut);
+			failureReason = e.toString();
+		}
+		finally
+		{
+			System.setOut(consoleOut);
+			resultOut.close();
+			ResetApkState(jimpleSelector);
+		}
+		
+		//
+		// The results of failed APK are kept with the stack trace
+		// for investigation
+		File resultFile = GetResultFile(outputDir, apkFile,
+				failureReason == null ? "" : FAILED_RESULT_FILE_SUFFIX);
+		resultFile.delete();
+		if (!tempResultFile.renameTo(resultFile))
+		{
+			System.err.println("[WARN] Failed to rename temp result file to " + resultFile.getPath());
+		}
+		
+		return failureReason;
+	}
+	
+	/**
+	
+		Get the result file of an APK in batch mode.
+		
+		The suffix is appended to the name of complete result file,
+		e.g. for temp file and the file of failed APK.
+	
+	 */
+	static File GetResultFile(File outputDir, String apkFile, String suffix)
+	{
+		return new File(outputDir, new File(apkFile).getName() + RESULT_FILE_SUFFIX + suffix);
+	}
+	
+	/**
+	
+		Analyze the APKs in a directory or listed in a file
+		one after another in this JVM.
+		
+		If the analysis of an APK fails, the failure is recorded
+		and the batch goes on with next APK.
+	
+	 */
+	private static void AnalyzeApkBatch(String androidJar, List<String> apkFiles, File outputDir,
+			JimpleSelector jimpleSelector, List<String> keywordListFileNames, List<KeywordDetector> keywordDetectors)
+	{
+		List<String> failedApkFiles = new ArrayList<String>();
+		for (String apkFile : apkFiles)
+		{
+			String failureReason = AnalyzeApkInBatch(androidJar, apkFile, outputDir,
+					jimpleSelector, keywordListFileNames, keywordDetectors);
+			if (failureReason != null)
+			{
+				failedApkFiles.add(apkFile);
+			}
+		}
+		
+		//
+		// Print the summary of batch
+		System.err.println(String.format("[INFO] Batch finished: %d APKs analyzed, %d failed",
+				apkFiles.size() - failedApkFiles.size(), failedApkFiles.size()));
+		for (String failedApkFile : failedApkFiles)
+		{
+			System.err.println("[INFO] Batch: failed APK " + failedApkFile);
+		}
+	}
+	
+	/**
+	
+		Serve as a worker JVM of WorkerPool.
+		
+		The paths of APKs are read from stdin one per line,
+		and the result of each APK is reported to stdout
+		when its analysis ends.
+		The worker exits when stdin is closed.
+	
+	 */
+	private static void ServeAsWorker(String androidJar, File outputDir,
+			JimpleSelector jimpleSelector, List<String> keywordListFileNames, List<KeywordDetector> keywordDetectors)
+	{
+		BufferedReader apkReader = new BufferedReader(new InputStreamReader(System.in));
+		while (true)
+		{
+			String apkFile;
+			try 
+			{
+				apkFile = apkReader.readLine();
+			} 
+			catch (IOException e) 
+			{
+				// Unexpected error, Fail-fast
+				throw new RuntimeException("Unexpected IO error on reading APK from supervisor", e);
+			}
+			if (apkFile == null)
+			{
+				break;
+			}
+			
+			String failureReason = AnalyzeApkInBatch(androidJar, apkFile, outputDir,
+					jimpleSelector, keywordListFileNames, keywordDetectors);
+			
+			//
+			// Report the result in one line,
+			// the reason of failure shouldn't span lines
+			if (failureReason == null)
+			{
+				System.out.println(WorkerPool.RESULT_PREFIX + WorkerPool.STATUS_OK);
+			}
+			else
+			{
+				System.out.println(WorkerPool.RESULT_PREFIX + WorkerPool.STATUS_FAILED + " "
+						+ failureReason.replace('\n', ' ').replace('\r', ' '));
+			}
+			System.out.flush();
+		}
+	}
+	
+	public static void main(String[] args) 
+	{
+		//
+		// Check if required files and libraries exist		
+		CheckDependencies();
+		
+		//
+		// Parse command line parameters
+		
+		// If no parameters supplied, print usage and exit
+		if (args.length <= 1)
+		{
+			ShowUsage();
+			
+			// Exit normally
+			return;
+		}
+		
+		String apkFile = null;
+		String androidJar = null;
+		List<String> keywordListFileNames = new ArrayList<String>();
+		String batchSource = null;
+		String outputDir = null;
+		boolean workerMode = false;
+		
+		// Get ANDROID.JAR and APP.APK
+		for (int i=0; i<args.length; i++)
+		{
+			//
+			// Parse input file arguments
+			if (args[i].equals("--android-jar")) 
+			{
+				// Get the path of ANDROID.JAR
+				// and skip next argument
+				i++;
+				androidJar = args[i];
+			}
+			else if (args[i].equals("--cache-size"))
+			{
+				// Get the size of string const cache
+				// and skip next argument
+				i++;
+				Config.strConstCacheSize = Integer.parseInt(args[i]);
+			}
+			else if (args[i].equals("--snapshot-dir"))
+			{
+				// Get the directory of APK snapshots
+				// and skip next argument
+				i++;
+				Config.snapshotDir = args[i];
+			}
+			else if (args[i].equals("--batch"))
+			{
+				// Get the APK directory or APK list file of batch
+				// and skip next argument
+				i++;
+				batchSource = args[i];
+			}
+			else if (args[i].equals("--output-dir"))
+			{
+				// Get the directory of batch results
+				// and skip next argument
+				i++;
+				outputDir = args[i];
+			}
+			else if (args[i].equals("--workers"))
+			{
+				// Get the number of worker JVMs in batch mode
+				// and skip next argument
+				i++;
+				Config.batchWorkers = Integer.parseInt(args[i]);
+			}
+			else if (args[i].equals("--worker-heap"))
+			{
+				// Get the max heap size of worker JVMs
+				// and skip next argument
+				i++;
+				Config.workerHeapSize = args[i];
+			}
+			else if (args[i].equals("--apk-timeout"))
+			{
+				// Get the time limit on each APK
+				// and skip next argument
+				i++;
+				Config.apkTimeoutSeconds = Integer.parseInt(args[i]);
+			}
+			else if (args[i].equals("--apks-per-worker"))
+			{
+				// Get the number of APKs before a worker JVM is restarted
+				// and skip next argument
+				i++;
+				Config.apksPerWorker = Integer.parseInt(args[i]);
+			}
+			else if (args[i].equals("--threads"))
+			{
+				// Get the number of threads for Jimple scan
+				// and skip next argument
+				i++;
+				Config.scanThreads = Integer.parseInt(args[i]);
+			}
+			else if (args[i].endsWith(".apk")) 
+			{
+				apkFile = args[i];
+			}
+			else if (args[i].endsWith(".txt"))
+			{
+				keywordListFileNames.add(args[i]);
+			}
+			
+			//
+			// Parse options
+			else if (args[i].equals("-m"))
+			{
+				Config.recordJimpleUsingHashMap = true;
+			}
+			else if (args[i].equals("-a"))
+			{
+				Config.interestedApiOnly = false;
+			}
+			else if (args[i].equals("-p"))
+			{
+				Config.apiInLibrariesOnly = true;
+			}
+			else if (args[i].equals("-d"))
+			{
+				Config.reachableMethodsOnly = true;
+			}
+			else if (args[i].equals("--cfg-only"))
+			{
+				Config.cfgOnlyBootstrap = true;
+			}
+			else if (args[i].equals("--triage"))
+			{
+				Config.dexStringTriage = true;
+			}
+			else if (args[i].equals("--lazy-bodies"))
+			{
+				Config.lazyMethodBodies = true;
+			}
+			else if (args[i].equals("--lean"))
+			{
+				Config.memoryLean = true;
+			}
+			else if (args[i].equals("--graph-chains"))
+			{
+				Config.graphCallChains = true;
+			}
+			else if (args[i].equals(WorkerPool.WORKER_SWITCH))
+			{
+				// Launched by WorkerPool, 
+				// the APKs are read from stdin
+				workerMode = true;
+			}
+			
+			//
+			// Default handler for other arguments
+			else
+			{
+				System.err.println("[WARN] Unknown argument ignored: " + args[i]);
+			}
+		}
+		
+		// Check if some parameters not supplied
+		if (apkFile == null && batchSource == null && !workerMode)
+		{
+			System.err.println("No APK file supplied\n");
+			ShowUsage();
+			throw new IllegalArgumentException("APK File parameter is invalid");
+		}
+		if (apkFile != null && batchSource != null)
+		{
+			System.err.println("APK file can't be supplied in batch mode\n");
+			ShowUsage();
+			throw new IllegalArgumentException("APK File parameter is invalid");
+		}
+		if ((batchSource != null || workerMode) && outputDir == null)
+		{
+			System.err.println("No output directory supplied for batch mode\n");
+			ShowUsage();
+			throw new IllegalArgumentException("Output directory parameter is invalid");
+		}
+		if (androidJar == null)
+		{
+			System.err.println("No ANDROID.JAR file path supplied\n");
+			ShowUsage();
+			throw new IllegalArgumentException("ANDROID.JAR file parameter is invalid");
+		}
+		if (keywordListFileNames.isEmpty())
+		{
+			System.err.println("No KEYWORD-LIST.TXT file supplied\n");
+			ShowUsage();
+			throw new IllegalArgumentException("KEYWORD-LIST.TXT file parameter is invalid");
+		}
+		
+		// Check if parameters are valid
+		if (apkFile != null)
+		{
+			File apk = new File(apkFile);
+			if (!apk.isFile())
+			{
+				System.err.println("APK File doesn't exist: " + apkFile);
+				throw new FileSystemNotFoundException("Specified APK File doesn't exist");
+			}
+		}
+		File androidJarFile = new File(androidJar);
+		if (!androidJarFile.isDirectory())
+		{
+			System.err.println("ANDROID.JAR path doesn't exist: " + androidJar);
+			throw new FileSystemNotFoundException("ANDROID.JAR path doesn't exist");
+		}
+		for (String keywordListFileName : keywordListFileNames)
+		{
+			File keywordListFile = new File(keywordListFileName);
+			if (!keywordListFile.isFile())
+			{
+				System.err.println("KEYWORD-LIST.TXT path doesn't exist: " + keywordListFileName);
+				throw new FileSystemNotFoundException("KEYWORD-LIST.TXT path doesn't exist");
+			}
+		}
+		
+		File outputDirFile = null;
+		if (outputDir != null)
+		{
+			outputDirFile = new File(outputDir);
+			if (!outputDirFile.isDirectory() && !outputDirFile.mkdirs())
+			{
+				System.err.println("Output directory can't be created: " + outputDir);
+				throw new FileSystemNotFoundException("Output directory can't be created");
+			}
+		}
+		
+		//
+		// Dispatch the APKs of batch to worker JVMs,
+		// they are analyzed in worker JVMs instead of this one
+		if (batchSource != null && Config.batchWorkers > 0)
+		{
+			List<String> apkFiles = new ApkList(batchSource).getApkFiles();
+			WorkerPool workerPool = new WorkerPool(WorkerPool.getWorkerArgs(args), outputDirFile);
+			workerPool.analyzeApks(apkFiles);
+			
+			// Exit normally
+			return;
+		}
+		
+		//
+		// Parse config files once,
+		// they are reused by all APKs in batch mode
+		LoadFlowDroidConfigFiles();
+		JimpleSelector jimpleSelector = new JimpleSelector();
+		List<KeywordDetector> keywordDetectors = new ArrayList<KeywordDetector>();
+		for (String keywordListFileName : keywordListFileNames)
+		{
+			keywordDetectors.add(new KeywordDetector(new KeywordList(keywordListFileName)));
+		}
+		
+		if (workerMode)
+		{
+			ServeAsWorker(androidJar, outputDirFile, jimpleSelector, keywordListFileNames, keywordDetectors);
+		}
+		else if (batchSource != null)
+		{
+			List<String> apkFiles = new ApkList(batchSource).getApkFiles();
+			AnalyzeApkBatch(androidJar, apkFiles, outputDirFile, jimpleSelector, keywordListFileNames, keywordDetectors);
+		}
+		else
+		{
+			AnalyzeApk(androidJar, apkFile, jimpleSelector, keywordListFileNames, keywordDetectors);
+		}
 		
 		// Exit normally
 	}
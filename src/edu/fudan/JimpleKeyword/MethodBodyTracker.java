@@ -0,0 +1,170 @@
+package edu.fudan.JimpleKeyword;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import edu.fudan.JimpleKeyword.util.SootUtil;
+import soot.MethodOrMethodContext;
+import soot.MethodSource;
+import soot.Scene;
+import soot.SootMethod;
+import soot.util.queue.QueueReader;
+
+/**
+	
+	This class keeps track of the method bodies
+	which are scanned in Jimple scan phase but not kept in memory,
+	so that they can be retrieved again by the stages after it.
+	
+	In memory-lean mode, the body of a method is released
+	right after it is scanned, unless a later stage still needs it:
+	
+	  KeyTaintAnalyzer enters the bodies of methods with key tainted vars,
+	  and the bodies of the methods they invoke, which are resolved statically
+	  instead of on the ICFG, so they may be unreachable ones,
+	  RootCallerInspector walks the ICFG and scans the bodies of displayable classes
+	  which aren't in layout resource index,
+	  RootCallerMethodInspector and TDroidLink only query the ICFG.
+	
+	So the bodies of reachable methods, which are held by the ICFG,
+	the bodies of methods with candidate statements,
+	and the bodies of displayable classes not indexed are kept.
+	
+	Soot drops the method source once a body is retrieved,
+	so the source is saved before the body is retrieved in scan,
+	and set back when the body is released.
+	Then the body of an invoked method can be retrieved again by KeyTaintAnalyzer.
+	A body retrieved before scan has no source saved, so it's never released.
+	
+	The methods skipped with dex method index are tracked as well.
+
+ */
+class MethodBodyTracker
+{
+	// Methods reachable in Call Graph
+	private Set<SootMethod> reachableMethods = new HashSet<SootMethod>();
+	
+	// Methods whose bodies are released or never retrieved
+	private Set<SootMethod> untrackedBodies = Collections.synchronizedSet(new HashSet<SootMethod>());
+	
+	// Sources of the bodies retrieved in scan and not decided to release yet
+	private Map<SootMethod, MethodSource> sourceOfMethod =
+			Collections.synchronizedMap(new HashMap<SootMethod, MethodSource>());
+	
+	// Number of bodies released
+	private int releasedBodyCount;
+	
+	// Classes whose layout resources are recorded in scan
+	private LayoutResourceIndex layoutResourceIndex;
+	
+	/**
+		
+		Initializer of this class
+		
+		The reachable methods are collected here,
+		so they can be looked up by scan workers concurrently.
+	
+	 */
+	MethodBodyTracker(LayoutResourceIndex layoutResourceIndex)
+	{
+		this.layoutResourceIndex = layoutResourceIndex;
+		if (!Config.memoryLean)
+		{
+			return;
+		}
+		
+		QueueReader<MethodOrMethodContext> methodIter = Scene.v().getReachableMethods().listener();
+		while (methodIter.hasNext())
+		{
+			reachableMethods.add(methodIter.next().method());
+		}
+	}
+	
+	/**
+		
+		Record a method skipped in Jimple scan without retrieving its body
+	
+	 */
+	void recordSkippedMethod(SootMethod m)
+	{
+		untrackedBodies.add(m);
+	}
+	
+	/**
+		
+		Retrieve the body of a method to scan,
+		and return whether the method has active body.
+		
+		In memory-lean mode, the method source is saved
+		so that the body can be retrieved again after it's released.
+	
+	 */
+	boolean retrieveBodyToScan(SootMethod m)
+	{
+		if (Config.memoryLean && !m.hasActiveBody() && m.getSource() != null)
+		{
+			sourceOfMethod.put(m, m.getSource());
+		}
+		
+		return SootUtil.ensureMethodActiveBody(m);
+	}
+	
+	/**
+		
+		Release the body of a scanned method in memory-lean mode,
+		if no later stage needs it.
+		
+		It's called by scan workers concurrently,
+		each on the methods of its own classes.
+	
+	 */
+	void releaseScannedBody(SootMethod m, boolean hasCandidates)
+	{
+		MethodSource source = sourceOfMethod.remove(m);
+		if (!Config.memoryLean
+			|| source == null
+			|| hasCandidates
+			|| reachableMethods.contains(m)
+			|| (RootCallerInspector.isChildOfDisplayableClass(m.getDeclaringClass())
+				&& !layoutResourceIndex.isIndexed(m.getDeclaringClass())))
+		{
+			return;
+		}
+		
+		//
+		// Set the source back, so the body can be retrieved again
+		m.releaseActiveBody();
+		m.setSource(source);
+		untrackedBodies.add(m);
+		synchronized (this)
+		{
+			releasedBodyCount++;
+		}
+	}
+	
+	/**
+		
+		Check if the method has active body as if all bodies were kept
+		after Jimple scan.
+		
+		The body is retrieved again if it was released or skipped.
+	
+	 */
+	boolean ensureScannedBody(SootMethod m)
+	{
+		if (m.hasActiveBody())
+		{
+			return true;
+		}
+		
+		return untrackedBodies.remove(m) && SootUtil.ensureMethodActiveBody(m);
+	}
+	
+	synchronized int getReleasedBodyCount()
+	{
+		return releasedBodyCount;
+	}
+}
@@ -0,0 +1,414 @@
+package edu.fudan.JimpleKeyword;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import soot.SootMethod;
+
+/**
+	
+	This class resolves the root caller methods of methods on demand,
+	walking up the Call Graph from callee to callers.
+	
+	A root caller is a method without callers,
+	or an entrypoint whose callers are all from dummyMainClass.
+	
+	The root callers of each method are computed once and memoized.
+	The methods calling each other in a cycle reach the same root callers,
+	so strongly connected components of caller graph are collapsed
+	and share their results, which makes the walk linear.
+	
+	The call chains to root callers are found by DFS from given method,
+	the same chains are found as an exhaustive walk over all paths,
+	since a DFS reaches each method first along the same path.
+	They are memoized for each method as well.
+	
+	The walks are done on method numbers of the Call Graph index,
+	and the sets of methods are kept in bitsets.
+	The results are shared by the RootCallerInspector of each keyword list.
+	
+	Once the root callers of a method are resolved,
+	the walks from it only read memoized results except the chains memo,
+	so they can be done by several threads.
+
+ */
+class RootCallerIndex
+{
+	private CallGraphIndex callGraph;
+	
+	//
+	// Memoized results
+	
+	// Distinct caller methods of each method, in the order of caller statements,
+	// the methods in callerMethodsComputed have been looked up,
+	// and null is recorded for root callers
+	private int[][] callerMethodsOfMethod;
+	private BitSet callerMethodsComputed = new BitSet();
+	
+	// Root callers of each method, each bit is a root caller number,
+	// the methods in the same strongly connected component share a bitset
+	private BitSet[] rootCallersOfMethod;
+	
+	// Root caller number of each root caller method, and the reverse
+	private int[] rootCallerNumberOfMethod;
+	private int[] rootCallerMethodOfNumber = new int[64];
+	private int rootCallerCount;
+	
+	// Call chains to root callers of each method, in the order they are found.
+	// They may be recorded by several threads.
+	private AtomicReferenceArray<List<RootCallerChain>> rootCallerChainsOfMethod;
+	
+	//
+	// Status of Tarjan's strongly connected components algorithm
+	private int nextDfsIndex;
+	private int[] dfsIndexOfMethod;
+	private int[] lowLinkOfMethod;
+	private int[] componentStack;
+	private int componentStackSize;
+	
+	/**
+		
+		Return the distinct caller methods of a method,
+		or null if the method is a root caller.
+	
+	 */
+	int[] getCallerMethods(int m)
+	{
+		if (callerMethodsComputed.get(m))
+		{
+			return callerMethodsOfMethod[m];
+		}
+		callerMethodsComputed.set(m);
+		
+		// For FlowDroid, all entrypoint methods are called from dummyMainClass
+		if (callGraph.isEntryPoint(m))
+		{
+			if (rootCallerCount == rootCallerMethodOfNumber.length)
+			{
+				rootCallerMethodOfNumber = Arrays.copyOf(rootCallerMethodOfNumber, rootCallerCount * 2);
+			}
+			rootCallerMethodOfNumber[rootCallerCount] = m;
+			rootCallerNumberOfMethod[m] = rootCallerCount++;
+			return null;
+		}
+		
+		int callerBegin = callGraph.getCallerBegin(m);
+		int callerEnd = callGraph.getCallerEnd(m);
+		
+		//
+		// Keep the first occurrence of each caller method.
+		// It's strange that sometimes the method of caller is unknown
+		// in newer version of FlowDroid, such callers are skipped.
+		int[] callerMethods = new int[callerEnd - callerBegin];
+		int callerMethodCount = 0;
+		BitSet callerMethodsSeen = new BitSet();
+		for (int i=callerBegin; i<callerEnd; i++)
+		{
+			int callerMethod = callGraph.getCallerMethodNumber(i);
+			if (callerMethod != CallGraphIndex.NO_METHOD && !callerMethodsSeen.get(callerMethod))
+			{
+				callerMethodsSeen.set(callerMethod);
+				callerMethods[callerMethodCount++] = callerMethod;
+			}
+		}
+		
+		callerMethodsOfMethod[m] = Arrays.copyOf(callerMethods, callerMethodCount);
+		return callerMethodsOfMethod[m];
+	}
+	
+	/**
+		
+		Compute the root callers of the strongly connected component
+		a method belongs to, with Tarjan's algorithm.
+		
+		Each method of the component is assigned the same bitset.
+	
+	 */
+	private void computeRootCallers(int m)
+	{
+		int dfsIndex = nextDfsIndex++;
+		dfsIndexOfMethod[m] = dfsIndex;
+		lowLinkOfMethod[m] = dfsIndex;
+		componentStack[componentStackSize++] = m;
+		
+		//
+		// Visit the callers, root callers have no caller to walk
+		int[] callerMethods = getCallerMethods(m);
+		if (callerMethods != null)
+		{
+			for (int callerMethod : callerMethods)
+			{
+				if (rootCallersOfMethod[callerMethod] != null)
+				{
+					// The component of caller has been computed
+					continue;
+				}
+				
+				if (dfsIndexOfMethod[callerMethod] < 0)
+				{
+					computeRootCallers(callerMethod);
+					if (rootCallersOfMethod[callerMethod] == null)
+					{
+						// Caller is still on component stack
+						lowLinkOfMethod[m] = Math.min(lowLinkOfMethod[m], lowLinkOfMethod[callerMethod]);
+					}
+				}
+				else
+				{
+					// Caller is on component stack
+					lowLinkOfMethod[m] = Math.min(lowLinkOfMethod[m], dfsIndexOfMethod[callerMethod]);
+				}
+			}
+		}
+		
+		if (lowLinkOfMethod[m] != dfsIndex)
+		{
+			return;
+		}
+		
+		//
+		// Current method is the head of a component,
+		// the methods above it on component stack belong to the component
+		int componentBegin = componentStackSize - 1;
+		while (componentStack[componentBegin] != m)
+		{
+			componentBegin--;
+		}
+		
+		//
+		// Merge the root callers of the components calling this one,
+		// which have been computed
+		BitSet rootCallers = new BitSet();
+		for (int i=componentBegin; i<componentStackSize; i++)
+		{
+			int member = componentStack[i];
+			int[] memberCallerMethods = getCallerMethods(member);
+			if (memberCallerMethods == null)
+			{
+				rootCallers.set(rootCallerNumberOfMethod[member]);
+				continue;
+			}
+			
+			for (int callerMethod : memberCallerMethods)
+			{
+				// The callers in the same component have no bitset yet
+				if (rootCallersOfMethod[callerMethod] != null)
+				{
+					rootCallers.or(rootCallersOfMethod[callerMethod]);
+				}
+			}
+		}
+		
+		for (int i=componentBegin; i<componentStackSize; i++)
+		{
+			rootCallersOfMethod[componentStack[i]] = rootCallers;
+		}
+		componentStackSize = componentBegin;
+	}
+	
+	/**
+		
+		Return the root callers of a method as a bitset of root caller numbers
+	
+	 */
+	private BitSet getRootCallers(int m)
+	{
+		if (rootCallersOfMethod[m] == null)
+		{
+			computeRootCallers(m);
+		}
+		
+		return rootCallersOfMethod[m];
+	}
+	
+	/**
+		
+		Resolve the root callers of a method ahead.
+		
+		It must be done on one thread
+		before the call chains of the method are looked up concurrently.
+	
+	 */
+	void resolveRootCallers(int m)
+	{
+		getRootCallers(m);
+	}
+	
+	/**
+		
+		Check if a method has any root caller
+	
+	 */
+	boolean hasRootCallers(int m)
+	{
+		return !getRootCallers(m).isEmpty();
+	}
+	
+	/**
+		
+		Return the root caller methods of a method,
+		in the order of root caller numbers, i.e. the order
+		the root callers are first met by all walks of this index.
+	
+	 */
+	List<SootMethod> getRootCallerMethods(int m)
+	{
+		BitSet rootCallers = getRootCallers(m);
+		List<SootMethod> rootCallerMethods = new ArrayList<SootMethod>(rootCallers.cardinality());
+		for (int i=rootCallers.nextSetBit(0); i>=0; i=rootCallers.nextSetBit(i+1))
+		{
+			rootCallerMethods.add(callGraph.getMethod(rootCallerMethodOfNumber[i]));
+		}
+		
+		return rootCallerMethods;
+	}
+	
+	/**
+		
+		Check if all root callers of a method have been found
+	
+	 */
+	private boolean areRootCallersFound(int m, BitSet rootCallersFound)
+	{
+		BitSet rootCallers = getRootCallers(m);
+		for (int i=rootCallers.nextSetBit(0); i>=0; i=rootCallers.nextSetBit(i+1))
+		{
+			if (!rootCallersFound.get(i))
+			{
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+		
+		Find out the call chains to root callers by DFS.
+		
+		The callers whose root callers have all been found are skipped,
+		since the chains through them can't reach any new root caller.
+	
+	 */
+	private void findRootCallerChains(int m, int callChainSize, RootCallerWalkState walk)
+	{
+		if (walk.visitedMethods.get(m))
+		{
+			return;
+		}
+		walk.visitedMethods.set(m);
+		
+		int[] callerMethods = getCallerMethods(m);
+		if (callerMethods == null)
+		{
+			//
+			// Current method is a root caller
+			walk.rootCallersFound.set(rootCallerNumberOfMethod[m]);
+			
+			List<SootMethod> curCallChain = new ArrayList<SootMethod>(callChainSize);
+			for (int i=0; i<callChainSize; i++)
+			{
+				curCallChain.add(callGraph.getMethod(walk.callChain[i]));
+			}
+			walk.chains.add(new RootCallerChain(callGraph.getMethod(m), curCallChain));
+			return;
+		}
+		
+		if (callChainSize == walk.callChain.length)
+		{
+			walk.callChain = Arrays.copyOf(walk.callChain, callChainSize * 2);
+		}
+		walk.callChain[callChainSize] = m;
+		
+		for (int callerMethod : callerMethods)
+		{
+			if (!areRootCallersFound(callerMethod, walk.rootCallersFound))
+			{
+				findRootCallerChains(callerMethod, callChainSize + 1, walk);
+			}
+		}
+	}
+	
+	/**
+		
+		Return the call chains from a method to each of its root callers,
+		in the order an exhaustive walk finds them.
+		
+		The method is given by its number in Call Graph index.
+		It can be called concurrently once the root callers of method are resolved.
+	
+	 */
+	List<RootCallerChain> getRootCallerChains(int m)
+	{
+		List<RootCallerChain> chains = rootCallerChainsOfMethod.get(m);
+		if (chains != null)
+		{
+			return chains;
+		}
+		
+		// The chains may be found by several threads at the same time,
+		// they are the same and any of them is kept
+		RootCallerWalkState walk = new RootCallerWalkState();
+		findRootCallerChains(m, 0, walk);
+		
+		rootCallerChainsOfMethod.compareAndSet(m, null, walk.chains);
+		return rootCallerChainsOfMethod.get(m);
+	}
+	
+	RootCallerIndex(CallGraphIndex callGraph)
+	{
+		this.callGraph = callGraph;
+		
+		int methodCount = callGraph.getMethodCount();
+		callerMethodsOfMethod = new int[methodCount][];
+		rootCallersOfMethod = new BitSet[methodCount];
+		rootCallerNumberOfMethod = new int[methodCount];
+		rootCallerChainsOfMethod = new AtomicReferenceArray<List<RootCallerChain>>(methodCount);
+		
+		dfsIndexOfMethod = new int[methodCount];
+		Arrays.fill(dfsIndexOfMethod, -1);
+		lowLinkOfMethod = new int[methodCount];
+		componentStack = new int[methodCount];
+	}
+}
+
+/**
+	
+	Data class for the status of a DFS walk to root callers
+	
+ */
+class RootCallerWalkState
+{
+	// Methods on current call chain
+	int[] callChain = new int[64];
+	
+	BitSet visitedMethods = new BitSet();
+	BitSet rootCallersFound = new BitSet();
+	
+	// Call chains found, in the order they are found
+	List<RootCallerChain> chains = new ArrayList<RootCallerChain>();
+}
+
+/**
+	
+	Data class for recording a call chain to a root caller method
+
+ */
+class RootCallerChain
+{
+	SootMethod rootCaller;
+	
+	// The methods on the chain except root caller,
+	// starting from the given method
+	// and ending with the method called by root caller
+	List<SootMethod> callChain;
+	
+	RootCallerChain(SootMethod rootCaller, List<SootMethod> callChain)
+	{
+		this.rootCaller = rootCaller;
+		this.callChain = callChain;
+	}
+}
@@ -1,22 +1,24 @@
 package edu.fudan.JimpleKeyword;
 
+import java.io.PrintStream;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.Stack;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import edu.fudan.JimpleKeyword.util.SootUtil;
 import soot.SootClass;
 import soot.SootMethod;
 import soot.Unit;
-import soot.jimple.InvokeExpr;
-import soot.jimple.InvokeStmt;
 
 /**
 
@@ -33,8 +35,15 @@ class RootCallerInspector
 	//
 	// Cached data structure for speeding up processing
 	
-	// Activity ID cache for avoiding repeated Activity class scanning
-	private Map<String, String> activityClassIdCache = new HashMap<String, String>();
+	// Activity ID cache for avoiding repeated Activity class scanning,
+	// it's shared by the workers in parallel inspection
+	private Map<String, String> activityClassIdCache = new ConcurrentHashMap<String, String>();
+	
+	// Root callers of methods, shared by keyword lists
+	private RootCallerIndex rootCallerIndex;
+	
+	// Layout resources of classes recorded in Jimple scan
+	private LayoutResourceIndex layoutResourceIndex;
 	
 	//
 	// Output statistics information
@@ -45,6 +54,10 @@ class RootCallerInspector
 	// Information on root caller methods.
 	// This info is formatted in order to be printed to console directly.
 	private StringBuilder rootCallerMethodInfo = new StringBuilder();
+	// Hits with the call chains to their root callers.
+	// They are recorded instead of formatted text
+	// when call chains are written as a graph.
+	private List<RootCallerHit> rootCallerHits = new ArrayList<RootCallerHit>();
 	
 	//
 	// Some constants to avoid inconsistency in code
@@ -56,37 +69,12 @@ class RootCallerInspector
 		Check if the given class is a sub-class of framework class which
 		manages content display, such as Activity, Fragment.
 		
+		It's looked up in the displayable class index of APK.
+		
 	*/
-	private boolean isChildOfDisplayableClass(SootClass sootClass)
+	static boolean isChildOfDisplayableClass(SootClass sootClass)
 	{
-		// Check classes from the lowest class hierarchy
-		SootClass curClass = sootClass;
-		while (true)
-		{
-			//
-			// Check if the name of the class contains
-			// name of class managing content display
-			String curClassName = curClass.getName();
-			
-			if (curClassName.contains("android.app.Activity")
-				|| curClassName.contains("android.app.Fragment"))
-			{
-				return true;
-			}
-			
-			//
-			// Otherwise, check the superclass of current class
-			if (curClass.hasSuperclass())
-			{
-				curClass = curClass.getSuperclass();
-			}
-			else
-			{
-				// We have arrived at the top of class hierarchy
-				// so the given class isn't a child of Activity
-				return false;
-			}
-		}
+		return Main.displayableClassesOfApk.isDisplayable(sootClass);
 	}
 	
 	/**
@@ -148,33 +136,48 @@ class RootCallerInspector
 	}
 	
 	/**
-	
-		This function checks if a method invoked is
-		setContentView or inflate.
 		
-		These method set the content of an activity
-
+		Find out the layout resource of a class by scanning the bodies of its methods,
+		or return null if its methods don't set any layout.
+		
+		It's used for the classes not in layout resource index.
+	
 	 */
-	private boolean isInvokeOfSetLayoutMethod(String methodName, String unitInString)
+	private String scanLayoutResourceOfClass(SootClass activityClass)
 	{
-		// For setContentView method,
-		// Here we only match "setContentView" instead of
-		// full name which contains package name etc.
-		// since setContentView usually appears in virtualinvoke 
-		// and it doesn't contains android framework package name
-		if (methodName.contains("setContentView"))
-		{
-			return true;
-		}
+		// Clone the list of methods in order to
+		// avoid ConcurrentModificationException
+		List<SootMethod> methods = new ArrayList<SootMethod>(activityClass.getMethods());
 		
-		//
-		// Matching LayoutInflater.inflate()
-		if (unitInString.contains("inflate") && unitInString.contains("LayoutInflater"))
-		{
-			return true;
+		for (SootMethod m : methods)
+		{			
+			//	
+			// Skip method without active body.
+			// Soot doesn't retrieve bodies concurrently,
+			// so the workers in parallel inspection retrieve them one by one
+			synchronized (RootCallerInspector.class)
+			{
+				if (!SootUtil.ensureMethodActiveBody(m))
+				{
+					continue;
+				}
+			}
+			
+			//
+			// Traverse the statements in onCreate method
+			// to extract setContentView statement
+			Iterator<Unit> unitIter = m.getActiveBody().getUnits().iterator();
+			while (unitIter.hasNext())
+			{
+				String resourceId = LayoutResourceIndex.getLayoutResourceOf(unitIter.next());
+				if (resourceId != null)
+				{
+					return resourceId;
+				}
+			}			
 		}
 		
-		return false;
+		return null;
 	}
 	
 	/**
@@ -207,56 +210,24 @@ class RootCallerInspector
 		}
 		
 		//
-		// Scan the Jimple code of Activity Class
-		
-		// Clone the list of methods in order to
-		// avoid ConcurrentModificationException
-		List<SootMethod> methods = new ArrayList<SootMethod>(activityClass.getMethods());
+		// Look up the layout resource index,
+		// the classes not indexed are scanned instead
+		String resourceId;
+		if (layoutResourceIndex.isIndexed(activityClass))
+		{
+			resourceId = layoutResourceIndex.getLayoutResource(activityClass);
+		}
+		else
+		{
+			resourceId = scanLayoutResourceOfClass(activityClass);
+		}
 		
-		for (SootMethod m : methods)
-		{			
-			//	
-			// Skip method without active body
-			if (!SootUtil.ensureMethodActiveBody(m))
-			{
-				continue;
-			}
+		if (resourceId != null)
+		{
+			// Save resource ID to activity ID cache
+			activityClassIdCache.put(className, resourceId);
 			
-			//
-			// Traverse the statements in onCreate method
-			// to extract setContentView statement
-			Iterator<Unit> unitIter = m.getActiveBody().getUnits().iterator();
-			while (unitIter.hasNext())
-			{
-				//
-				// We only care about invoke statement
-				Unit unit = unitIter.next();
-				if (!(unit instanceof InvokeStmt))
-				{
-					continue;
-				}				
-				
-				//
-				// We only care about invoke of setContentView/inflate method
-				InvokeExpr invokeExpr = ((InvokeStmt)unit).getInvokeExpr();
-				String invokedMethodName = invokeExpr.getMethod().getName();
-				if (!isInvokeOfSetLayoutMethod(invokedMethodName, unit.toString()))
-				{
-					continue;
-				}
-				
-				//
-				// Record root caller and its resource ID
-				// Currently we record info in displayable format directly.
-				// For both setContentView and inflate,
-				// the resource ID is the first argument.
-				String resourceId = invokeExpr.getArg(0).toString();
-				
-				// Save resource ID to activity ID cache
-				activityClassIdCache.put(className, resourceId);
-				
-				return resourceId;
-			}			
+			return resourceId;
 		}
 		
 		//
@@ -280,7 +251,7 @@ class RootCallerInspector
 		record info on Activity.
 
 	 */
-	private void inspectRootCallerClass(SootClass sootClass, String keyword, int keywordUnitNum)
+	private void inspectRootCallerClass(SootClass sootClass, String keyword, int keywordUnitNum, RootCallerScanCollector out)
 	{		
 		//
 		// If root caller class is derived from Activity class,
@@ -295,48 +266,12 @@ class RootCallerInspector
 			//
 			// Record root caller activity class
 			String rootCallerClassName = sootClass.getName();
-			rootActivityClassInfo.add(Integer.toString(keywordUnitNum) + ',' + rootCallerClassName + ',' + keyword + ',' + activityId);
+			out.rootActivityClassInfo.add(Integer.toString(keywordUnitNum) + ',' + rootCallerClassName + ',' + keyword + ',' + activityId);
 
 		}
 	}
 	
-	/**
-	 
-		FlowDroid set all components called from dummyMainClass.
-		So when a method is called from dummyMainClass, 
-		this method is an entrypoint.
-		
-		This function is used for determining if all callers are
-		from dummyMainClass to judge if a method is an entrypoint.
-
-	 */
-	private boolean areCallersFromDummyMain(Collection<Unit> callers)
-	{
-		//
-		// Check assumptions
-		assert callers != null;
-		
-		for (Unit caller : callers)
-		{
-			//
-			// Find out the class the caller statement located in
-			SootMethod callerMethod = Main.cfgOfApk.getMethodOf(caller);
-			SootClass callerClass = callerMethod.getDeclaringClass();
-			
-			//
-			// Check if the caller class isn't dummyMainClass
-			if (!callerClass.getName().contains("dummyMainClass"))
-			{
-				return false;
-			}
-		}
-		
-		//
-		// All callers are from dummyMainClass
-		return true;
-	}
-
-	private void recordRootCallerMethodInfo(SootMethod rootCallerMethod, JimpleHit jimpleHit, Stack<SootMethod> callChain)
+	private void recordRootCallerMethodInfo(SootMethod rootCallerMethod, JimpleHit jimpleHit, List<SootMethod> callChain)
 	{
 		// Summary info of current root caller method
 		String curMethodInfo = String.format("%d,%s", 
@@ -351,7 +286,7 @@ class RootCallerInspector
 		rootCallerMethodInfo.append('\n');
 		for (int i=callChain.size()-1; i>=0; i--)
 		{
-			SootMethod curMethod = callChain.elementAt(i);
+			SootMethod curMethod = callChain.get(i);
 			rootCallerMethodInfo.append(curMethod.getSignature());
 			rootCallerMethodInfo.append('\n');
 		}
@@ -362,16 +297,16 @@ class RootCallerInspector
 	
 	//
 	// A set of signature of root caller methods
-	// in order to avoid duplicate root caller method info
+	// in order to avoid duplicated root caller method info
 	private Set<String> rootCallerMethodID = new HashSet<String>();
 	
 	/**
 	
-		Record a unique signature of root caller method
+		Get a unique signature of root caller method
 		in order to avoid duplicated root caller method info.
 
 	 */
-	private boolean recordRootCallerID(SootMethod rootCallerMethod, JimpleHit jimpleHit, Stack<SootMethod> callChain)
+	private String getRootCallerID(SootMethod rootCallerMethod, JimpleHit jimpleHit, List<SootMethod> callChain)
 	{
 		//
 		// Get fromMethod signature
@@ -382,105 +317,99 @@ class RootCallerInspector
 		}
 		else
 		{
-			fromMethodID = callChain.elementAt(0).getSignature();
+			fromMethodID = callChain.get(0).getSignature();
 		}
 		
 		//
 		// We record keyword,fromMethod,rootCallerMethod as a signature
-		String curID = String.format("%s,%s,%s",
+		return String.format("%s,%s,%s",
 				jimpleHit.keyword, fromMethodID, rootCallerMethod.getSignature());
-		return rootCallerMethodID.add(curID);
-	}
-	
-	/**
-
-		Root caller method is found.
-		
-		Inspect the root caller method
-		and record relating info on the method.
-
-	 */
-	private void inspectRootCallerMethod(SootMethod rootCallerMethod, JimpleHit jimpleHit, Stack<SootMethod> callChain)
-	{
-		//
-		// Record ID of root caller methods
-		// in order to avoid duplicated root caller methods info
-		if (recordRootCallerID(rootCallerMethod, jimpleHit, callChain))
-		{
-			//
-			// Current root caller method hasn't been recorded
-			// Record its relating info
-			recordRootCallerMethodInfo(rootCallerMethod, jimpleHit, callChain);
-		}
-		
-		//
-		// Inspect and record related information of the root caller class
-		SootClass rootCallerClass = rootCallerMethod.getDeclaringClass();
-		inspectRootCallerClass(rootCallerClass, jimpleHit.keyword, jimpleHit.keywordUnitNum);		
 	}
 	
 	/**
 	 
-		Inspect the root caller of a given Jimple statement.
+		Inspect the root callers of a given Jimple statement.
 		
-		methodStack is used for recording the methods in the call chain
-		to avoid invocation cycle.
+		The root callers and the call chains to them
+		are looked up in root caller index.
+		The chains are recorded in collector,
+		and they are deduplicated when the collector is merged.
 
 	 */
-	private void inspectCaller(JimpleHit jimpleHit, Stack<SootMethod> methodStack)
+	private void inspectCaller(JimpleHit jimpleHit, RootCallerScanCollector out)
 	{
 		// Find out the method contains the Jimple statement
-		SootMethod m = Main.cfgOfApk.getMethodOf(jimpleHit.jimple);
+		int m = Main.callGraphOfApk.getMethodNumberOf(jimpleHit.jimple);
 		// It's strange that sometimes getMethodOf returns null
 		// in newer version of FlowDroid.
-		if (m == null)
+		if (m == CallGraphIndex.NO_METHOD)
 		{
 			return;
 		}
 		
 		//
-		// Find out the callers of current method
-		Collection<Unit> callers = Main.cfgOfApk.getCallersOf(m);
-		if (callers.isEmpty()
-			// For FlowDroid, all entrypoint methods are called from dummyMainClass
-			|| areCallersFromDummyMain(callers))
+		// Inspect each root caller method
+		// in the order they are found up the call chains
+		for (RootCallerChain chain : rootCallerIndex.getRootCallerChains(m))
 		{
+			RootCallerRecord record = new RootCallerRecord();
+			record.jimpleHit = jimpleHit;
+			record.hitMethod = m;
+			record.chain = chain;
+			record.rootCallerID = getRootCallerID(chain.rootCaller, jimpleHit, chain.callChain);
+			out.rootCallerRecords.add(record);
+			
 			//
-			// Current method is a root caller
-			// Inspect the root caller method
-			inspectRootCallerMethod(m, jimpleHit, methodStack);
+			// Inspect and record related information of the root caller class
+			SootClass rootCallerClass = chain.rootCaller.getDeclaringClass();
+			inspectRootCallerClass(rootCallerClass, jimpleHit.keyword, jimpleHit.keywordUnitNum, out);
 		}
-		else
+	}
+	
+	/**
+		
+		Save the info recorded in a collector to output fields.
+		
+		The collectors must be merged in hit order,
+		since only the first chain to each root caller is recorded.
+	
+	 */
+	private void mergeCollector(RootCallerScanCollector out)
+	{
+		rootActivityClassInfo.addAll(out.rootActivityClassInfo);
+		
+		RootCallerHit rootCallerHit = null;
+		for (RootCallerRecord record : out.rootCallerRecords)
 		{
-			if (methodStack.contains(m))
+			//
+			// Skip the root caller method recorded
+			if (!rootCallerMethodID.add(record.rootCallerID))
 			{
-				// An invocation cycle encountered
-				// Don't inspect caller statements any more
-				return;
+				continue;
 			}
 			
-			//
-			// Record current method on stack
-			// for inspecting method in next-level
-			methodStack.push(m);
-			
-			for (Unit caller : callers)
+			if (!Config.graphCallChains)
 			{
-				// Build a new instance of JimpleHit
-				// to record jimple and corresponding keyword
-				JimpleHit callerHit = new JimpleHit();
-				callerHit.jimple = caller;
-				// Transit keyword, keywordUnitNum
-				callerHit.keyword = jimpleHit.keyword;
-				callerHit.keywordUnitNum = jimpleHit.keywordUnitNum;
-				
-				inspectCaller(callerHit, methodStack);
+				//
+				// Current root caller method hasn't been recorded
+				// Record its relating info
+				recordRootCallerMethodInfo(record.chain.rootCaller, record.jimpleHit, record.chain.callChain);
+				continue;
 			}
 			
 			//
-			// Remove current method and
-			// return to an upper level
-			methodStack.pop();
+			// Record the chains to be written as a graph,
+			// the records of a hit are adjacent
+			if (rootCallerHit == null || rootCallerHit.jimpleHit != record.jimpleHit)
+			{
+				rootCallerHit = new RootCallerHit();
+				rootCallerHit.jimpleHit = record.jimpleHit;
+				rootCallerHit.hitInfo = String.format("%d,%s", record.jimpleHit.keywordUnitNum, record.jimpleHit.keyword);
+				rootCallerHit.hitMethod = record.hitMethod;
+				rootCallerHit.chains = new ArrayList<RootCallerChain>();
+				rootCallerHits.add(rootCallerHit);
+			}
+			rootCallerHit.chains.add(record.chain);
 		}
 	}
 	
@@ -493,23 +422,116 @@ class RootCallerInspector
 		//
 		// CORNER CASE: When the list is empty,
 		// This function still work.
+		RootCallerScanCollector out = new RootCallerScanCollector();
 		for (JimpleHit jimpleHit : jimples)
 		{
-			//
-			// Allocate an method stack for each Jimple statement
-			// to avoid invocation cycle
-			Stack<SootMethod> methodStack = new Stack<SootMethod>();
-			inspectCaller(jimpleHit, methodStack);
+			inspectCaller(jimpleHit, out);
+		}
+		
+		mergeCollector(out);
+	}
+	
+	/**
+		
+		Parallel version of inspectRootCaller.
+		
+		The root callers of hits are resolved on this thread first,
+		then the hits are split into consecutive chunks
+		which are inspected by a pool of workers.
+		Each worker records info in its own collector,
+		and the collectors are merged in chunk order.
+		So the output is the same as that of inspectRootCaller.
+	
+	 */
+	private void inspectRootCallerInParallel(final List<JimpleHit> jimples)
+	{
+		//
+		// Check assumptions
+		assert jimples != null;
+		
+		//
+		// Resolve root callers of the methods of hits,
+		// then the workers only look up call chains
+		for (JimpleHit jimpleHit : jimples)
+		{
+			int m = Main.callGraphOfApk.getMethodNumberOf(jimpleHit.jimple);
+			if (m != CallGraphIndex.NO_METHOD)
+			{
+				rootCallerIndex.resolveRootCallers(m);
+			}
+		}
+		
+		//
+		// Several chunks for each worker
+		// so that the workers finish at about the same time
+		int chunkCount = Config.scanThreads * 4;
+		int chunkSize = (jimples.size() + chunkCount - 1) / chunkCount;
+		
+		//
+		// Inspect chunks in parallel
+		ExecutorService executor = Executors.newFixedThreadPool(Config.scanThreads);
+		List<Future<RootCallerScanCollector>> results = new ArrayList<Future<RootCallerScanCollector>>();
+		for (int i=0; i<jimples.size(); i+=chunkSize)
+		{
+			final int chunkBegin = i;
+			final int chunkEnd = Math.min(i + chunkSize, jimples.size());
+			results.add(executor.submit(new Callable<RootCallerScanCollector>()
+			{
+				@Override
+				public RootCallerScanCollector call()
+				{
+					RootCallerScanCollector out = new RootCallerScanCollector();
+					for (JimpleHit jimpleHit : jimples.subList(chunkBegin, chunkEnd))
+					{
+						inspectCaller(jimpleHit, out);
+					}
+					
+					return out;
+				}
+			}));
+		}
+		
+		//
+		// Merge the info recorded by workers in chunk order
+		try
+		{
+			for (Future<RootCallerScanCollector> result : results)
+			{
+				mergeCollector(result.get());
+			}
+		}
+		catch (InterruptedException e)
+		{
+			// Unexpected error, Fail-fast
+			throw new RuntimeException("Root caller inspection is interrupted", e);
+		}
+		catch (ExecutionException e)
+		{
+			// Unexpected error, Fail-fast
+			throw new RuntimeException("Unexpected error in root caller inspection worker", e.getCause());
+		}
+		finally
+		{
+			executor.shutdownNow();
 		}
 	}
 
-	RootCallerInspector(List<JimpleHit> jimples)
+	RootCallerInspector(List<JimpleHit> jimples, RootCallerIndex rootCallerIndex, LayoutResourceIndex layoutResourceIndex)
 	{
 		//
 		// Check assumptions
-		assert Main.cfgOfApk != null;
+		assert Main.callGraphOfApk != null;
 		
-		inspectRootCaller(jimples);
+		this.rootCallerIndex = rootCallerIndex;
+		this.layoutResourceIndex = layoutResourceIndex;
+		if (Config.scanThreads > 1)
+		{
+			inspectRootCallerInParallel(jimples);
+		}
+		else
+		{
+			inspectRootCaller(jimples);
+		}
 	}
 	
 	//
@@ -522,11 +544,81 @@ class RootCallerInspector
 	
 	/**
 	 
-		This method returns formatted root caller methods info.
+		This method writes root caller methods info to given stream,
+		either as full text of each chain or as a graph of call chains.
 
 	 */
-	String getRootCallerMethodInfo()
+	void writeRootCallerMethodInfo(PrintStream out)
 	{
-		return rootCallerMethodInfo.toString();
+		if (!Config.graphCallChains)
+		{
+			out.print(rootCallerMethodInfo);
+			return;
+		}
+		
+		CallChainGraphWriter graphWriter = new CallChainGraphWriter(out, Main.callGraphOfApk);
+		for (RootCallerHit rootCallerHit : rootCallerHits)
+		{
+			List<SootMethod> rootCallers = new ArrayList<SootMethod>(rootCallerHit.chains.size());
+			for (RootCallerChain chain : rootCallerHit.chains)
+			{
+				graphWriter.writeChain(chain.rootCaller, chain.callChain);
+				rootCallers.add(chain.rootCaller);
+			}
+			
+			graphWriter.writeHit(rootCallerHit.hitMethod, rootCallers, rootCallerHit.hitInfo);
+		}
 	}
 }
+
+/**
+	
+	Data class for recording the call chains to root callers of a hit,
+	which are written as a graph
+
+ */
+class RootCallerHit
+{
+	JimpleHit jimpleHit;
+	
+	// Summary info of the hit
+	String hitInfo;
+	
+	// Method number of the method contains hit
+	int hitMethod;
+	
+	List<RootCallerChain> chains;
+}
+
+/**
+	
+	Data class for recording a call chain to a root caller of a hit,
+	before duplicated root caller methods are dropped
+	
+ */
+class RootCallerRecord
+{
+	JimpleHit jimpleHit;
+	
+	// Method number of the method contains hit
+	int hitMethod;
+	
+	RootCallerChain chain;
+	
+	// Signature of root caller method for deduplication
+	String rootCallerID;
+}
+
+/**
+	
+	Data class for collecting info recorded while inspecting root callers.
+	
+	In parallel inspection, each chunk of hits is inspected with its own collector,
+	and the collectors are merged in chunk order afterwards.
+
+ */
+class RootCallerScanCollector
+{
+	List<String> rootActivityClassInfo = new ArrayList<String>();
+	List<RootCallerRecord> rootCallerRecords = new ArrayList<RootCallerRecord>();
+}
@@ -1,17 +1,21 @@
 package edu.fudan.JimpleKeyword;
 
+import java.io.PrintStream;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.Stack;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import soot.SootClass;
 import soot.SootMethod;
-import soot.Unit;
 
 /**
 
@@ -30,15 +34,23 @@ class RootCallerMethodInspector
 	private List<MethodHitInfo> dataBlocksInfo;
 	
 	//
-	// Output buffer for saving root caller method info
+	// Output buffer for saving root caller method info,
+	// it's used for full text of call chains only
 	private StringBuilder rootCallerMethodInfo = new StringBuilder();
 	
+	//
+	// Root caller methods resolved on Call Graph
+	private RootCallerIndex rootCallerIndex;
+	
+	private CallGraphIndex callGraph;
+	
 	private List<MethodHitInfo> refineDataBlockInfo()
 	{
 		//
 		// Initialize the variables for recording 
-		// refined data block info
-		Map<String, MethodHitInfo> refinedInfo = new HashMap<String, MethodHitInfo>();
+		// refined data block info,
+		// the data blocks are kept in the order of IDs
+		Map<Integer, MethodHitInfo> refinedInfo = new TreeMap<Integer, MethodHitInfo>();
 		
 		//
 		// Refine raw data block stat info
@@ -64,7 +76,7 @@ class RootCallerMethodInspector
 				// Create a new refined info instance.
 				MethodHitInfo curRefinedInfo = new MethodHitInfo();
 				curRefinedInfo.dataBlockId = curRawStat.dataBlockId;
-				curRefinedInfo.methodHit = Main.cfgOfApk.getMethodOf(curRawStat.statement);
+				curRefinedInfo.methodHit = callGraph.getMethodOf(curRawStat.statement);
 				curRefinedInfo.keywords = new HashSet<String>();
 				curRefinedInfo.keywords.add(curRawStat.keyword);
 				
@@ -82,90 +94,50 @@ class RootCallerMethodInspector
 		return refinedInfoInList;
 	}
 	
-	/**
-	 
-		FlowDroid set all components called from dummyMainClass.
-		So when a method is called from dummyMainClass, 
-		this method is an entrypoint.
-		
-		This function is used for determining if all callers are
-		from dummyMainClass to judge if a method is an entrypoint.
-	
-	 */
-	private boolean areCallersFromDummyMain(Collection<Unit> callers)
-	{
-		//
-		// Check assumptions
-		assert callers != null;
-		
-		for (Unit caller : callers)
-		{
-			//
-			// Find out the class the caller statement located in
-			SootMethod callerMethod = Main.cfgOfApk.getMethodOf(caller);
-			SootClass callerClass = callerMethod.getDeclaringClass();
-			
-			//
-			// Check if the caller class isn't dummyMainClass
-			if (!callerClass.getName().contains("dummyMainClass"))
-			{
-				return false;
-			}
-		}
-		
-		//
-		// All callers are from dummyMainClass
-		return true;
-	}
-	
-	private void inspectRootCallerMethod(MethodHitInfo methodHit, Stack<SootMethod> callChain)
+	private void inspectRootCallerMethod(MethodHitInfo methodHit, int rootCallerMethod, CallChainWalkState walk)
 	{
 		//
 		// Output root caller method info
+		StringBuilder out = walk.rootCallerMethodInfo;
 		
 		// Output root caller method summary
-		rootCallerMethodInfo.append(methodHit.dataBlockId);
-		rootCallerMethodInfo.append(',');
-		rootCallerMethodInfo.append(methodHit.keywords.toString());
-		rootCallerMethodInfo.append('\n');
+		out.append(methodHit.dataBlockId);
+		out.append(',');
+		out.append(methodHit.keywords.toString());
+		out.append('\n');
 		
 		//
 		// Output root caller method call chain
-		rootCallerMethodInfo.append(methodHit.methodHit.getSignature());
-		rootCallerMethodInfo.append('\n');
-		for (int i=callChain.size()-1; i>=0; i--)
+		out.append(callGraph.getMethod(rootCallerMethod).getSignature());
+		out.append('\n');
+		for (int i=walk.callChainSize-1; i>=0; i--)
 		{
-			SootMethod curMethod = callChain.get(i);
+			SootMethod curMethod = callGraph.getMethod(walk.callChain[i]);
 			
-			rootCallerMethodInfo.append(curMethod.getSignature());
-			rootCallerMethodInfo.append('\n');
+			out.append(curMethod.getSignature());
+			out.append('\n');
 		}
 		
 		//
 		// Output epilog text
-		rootCallerMethodInfo.append('\n');
+		out.append('\n');
 	}
 	
-	private void inspectCaller(MethodHitInfo methodHit, Stack<SootMethod> callChain)
+	private void inspectCaller(MethodHitInfo methodHit, int m, CallChainWalkState walk)
 	{		
-		// Shortcut for current method
-		SootMethod m = methodHit.methodHit;
-		
 		//
-		// Find out the callers of current method
-		Collection<Unit> callers = Main.cfgOfApk.getCallersOf(m);
-		if (callers.isEmpty()
-			// For FlowDroid, all entrypoint methods are called from dummyMainClass
-			|| areCallersFromDummyMain(callers))
+		// Check the callers of current method,
+		// for FlowDroid, all entrypoint methods are called from dummyMainClass
+		if (callGraph.isEntryPoint(m))
 		{
 			//
 			// Current method is a root caller
 			// Inspect the root caller method
-			inspectRootCallerMethod(methodHit, callChain);
+			inspectRootCallerMethod(methodHit, m, walk);
 		}
 		else
 		{
-			if (callChain.contains(m))
+			if (walk.methodsOnChain.get(m))
 			{
 				// An invocation cycle encountered
 				// Don't inspect caller statements any more
@@ -175,28 +147,46 @@ class RootCallerMethodInspector
 			//
 			// Record current method on stack
 			// for inspecting method in next-level
-			callChain.push(m);
+			if (walk.callChainSize == walk.callChain.length)
+			{
+				walk.callChain = Arrays.copyOf(walk.callChain, walk.callChainSize * 2);
+			}
+			walk.callChain[walk.callChainSize++] = m;
+			walk.methodsOnChain.set(m);
 			
-			for (Unit caller : callers)
+			for (int i=callGraph.getCallerBegin(m); i<callGraph.getCallerEnd(m); i++)
 			{
-				// Build a new instance of MethodHit
-				// to record method hit and corresponding keyword
-				MethodHitInfo callerHit = new MethodHitInfo();
-				callerHit.methodHit = Main.cfgOfApk.getMethodOf(caller);
-				// Transit keyword, keywordUnitNum
-				callerHit.keywords = methodHit.keywords;
-				callerHit.dataBlockId = methodHit.dataBlockId;
-				
-				inspectCaller(callerHit, callChain);
+				// It's strange that sometimes the method of caller is unknown
+				// in newer version of FlowDroid.
+				int callerMethod = callGraph.getCallerMethodNumber(i);
+				if (callerMethod != CallGraphIndex.NO_METHOD)
+				{
+					inspectCaller(methodHit, callerMethod, walk);
+				}
 			}
 			
 			//
 			// Remove current method and
 			// return to an upper level
-			callChain.pop();
+			walk.methodsOnChain.clear(m);
+			walk.callChainSize--;
 		}
 	}
 	
+	private void inspectDataBlock(MethodHitInfo curDataBlockInfo, CallChainWalkState walk)
+	{
+		//
+		// Skip the data block whose method is unknown to ICFG
+		if (curDataBlockInfo.methodHit == null)
+		{
+			return;
+		}
+		
+		//
+		// Inspect current data block recursively
+		inspectCaller(curDataBlockInfo, callGraph.getMethodNumber(curDataBlockInfo.methodHit), walk);
+	}
+	
 	private void inspectRootCaller()
 	{
 		//
@@ -206,23 +196,145 @@ class RootCallerMethodInspector
 		
 		//
 		// Inspect root caller method of each data block
+		CallChainWalkState walk = new CallChainWalkState(rootCallerMethodInfo);
 		for (MethodHitInfo curDataBlockInfo : dataBlocksInfo)
 		{
-			//
-			// Build a new call chain stack for each data block
-			Stack<SootMethod> callChain = new Stack<SootMethod>();
+			inspectDataBlock(curDataBlockInfo, walk);
+		}
+	}
+	
+	/**
+		
+		Parallel version of inspectRootCaller.
+		
+		The walks only read Call Graph index,
+		so the data blocks are split into consecutive chunks
+		which are inspected by a pool of workers.
+		Each worker writes info to its own buffer,
+		and the buffers are merged in chunk order.
+		So the output is the same as that of inspectRootCaller.
+	
+	 */
+	private void inspectRootCallerInParallel()
+	{
+		//
+		// This method must be called after
+		// the data block info is refined
+		assert dataBlocksInfo != null;
+		
+		//
+		// Several chunks for each worker
+		// so that the workers finish at about the same time
+		int chunkCount = Config.scanThreads * 4;
+		int chunkSize = (dataBlocksInfo.size() + chunkCount - 1) / chunkCount;
+		
+		//
+		// Inspect chunks in parallel
+		ExecutorService executor = Executors.newFixedThreadPool(Config.scanThreads);
+		List<Future<StringBuilder>> results = new ArrayList<Future<StringBuilder>>();
+		for (int i=0; i<dataBlocksInfo.size(); i+=chunkSize)
+		{
+			final int chunkBegin = i;
+			final int chunkEnd = Math.min(i + chunkSize, dataBlocksInfo.size());
+			results.add(executor.submit(new Callable<StringBuilder>()
+			{
+				@Override
+				public StringBuilder call()
+				{
+					CallChainWalkState walk = new CallChainWalkState(new StringBuilder());
+					for (MethodHitInfo curDataBlockInfo : dataBlocksInfo.subList(chunkBegin, chunkEnd))
+					{
+						inspectDataBlock(curDataBlockInfo, walk);
+					}
+					
+					return walk.rootCallerMethodInfo;
+				}
+			}));
+		}
+		
+		//
+		// Merge the info written by workers in chunk order
+		try
+		{
+			for (Future<StringBuilder> result : results)
+			{
+				rootCallerMethodInfo.append(result.get());
+			}
+		}
+		catch (InterruptedException e)
+		{
+			// Unexpected error, Fail-fast
+			throw new RuntimeException("Root caller inspection is interrupted", e);
+		}
+		catch (ExecutionException e)
+		{
+			// Unexpected error, Fail-fast
+			throw new RuntimeException("Unexpected error in root caller inspection worker", e.getCause());
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+		
+		Write the edges from the callers of a method up to its root callers.
+		
+		Only the callers reaching a root caller are written,
+		each method is expanded once for all data blocks.
+	
+	 */
+	private void writeCallerGraph(CallChainGraphWriter graphWriter, int m, BitSet methodsExpanded)
+	{
+		if (methodsExpanded.get(m))
+		{
+			return;
+		}
+		methodsExpanded.set(m);
+		
+		int[] pendingMethods = new int[64];
+		int pendingMethodCount = 0;
+		pendingMethods[pendingMethodCount++] = m;
+		while (pendingMethodCount > 0)
+		{
+			int calleeMethod = pendingMethods[--pendingMethodCount];
 			
-			//
-			// Inspect current data block recursively
-			inspectCaller(curDataBlockInfo, callChain);
+			// Root callers have no caller to walk
+			int[] callerMethods = rootCallerIndex.getCallerMethods(calleeMethod);
+			if (callerMethods == null)
+			{
+				continue;
+			}
+			
+			for (int callerMethod : callerMethods)
+			{
+				if (!rootCallerIndex.hasRootCallers(callerMethod))
+				{
+					continue;
+				}
+				graphWriter.writeEdge(callerMethod, calleeMethod);
+				
+				if (!methodsExpanded.get(callerMethod))
+				{
+					methodsExpanded.set(callerMethod);
+					if (pendingMethodCount == pendingMethods.length)
+					{
+						pendingMethods = Arrays.copyOf(pendingMethods, pendingMethodCount * 2);
+					}
+					pendingMethods[pendingMethodCount++] = callerMethod;
+				}
+			}
 		}
 	}
 	
-	RootCallerMethodInspector(List<DataBlockRawStat> rawStat)
+	RootCallerMethodInspector(List<DataBlockRawStat> rawStat, RootCallerIndex rootCallerIndex)
 	{
 		//
 		// Initialize data fields
 		this.rawStat = rawStat;
+		this.callGraph = Main.callGraphOfApk;
+		this.rootCallerIndex = rootCallerIndex;
 		
 		//
 		// Refine the data blocks info
@@ -230,18 +342,66 @@ class RootCallerMethodInspector
 		
 		//
 		// Find out the root caller methods of data blocks
-		// and save info to class fields
-		inspectRootCaller();
+		// and save info to class fields.
+		// The call chains graph is written on demand instead.
+		if (!Config.graphCallChains && Config.scanThreads > 1)
+		{
+			inspectRootCallerInParallel();
+		}
+		else if (!Config.graphCallChains)
+		{
+			inspectRootCaller();
+		}
 	}
 	
 	/**
 	 
-		This method returns formatted root caller methods info.
+		This method writes formatted root caller methods info.
+		
+		The call chains are written as full text of each chain by default,
+		or as a graph of methods with "--graph-chains".
+		
+		The graph isn't a rewrite of the text chains.
+		All callers of a data block method which reach a root caller are written,
+		while the text only has one chain for each root caller,
+		so the graph has the edges of text chains and may have more.
+		The root callers of a hit are in the order of root caller numbers
+		of RootCallerIndex instead of the order text chains are found.
 	
 	 */
-	String getRootCallerMethodInfo()
+	void writeRootCallerMethodInfo(PrintStream out)
 	{
-		return rootCallerMethodInfo.toString();
+		if (!Config.graphCallChains)
+		{
+			out.print(rootCallerMethodInfo);
+			return;
+		}
+		
+		CallChainGraphWriter graphWriter = new CallChainGraphWriter(out, callGraph);
+		BitSet methodsExpanded = new BitSet();
+		for (MethodHitInfo curDataBlockInfo : dataBlocksInfo)
+		{
+			//
+			// Skip the data block whose method is unknown to ICFG
+			if (curDataBlockInfo.methodHit == null)
+			{
+				continue;
+			}
+			
+			//
+			// Skip the data block without any root caller,
+			// no call chain is written for it in text either
+			int m = callGraph.getMethodNumber(curDataBlockInfo.methodHit);
+			List<SootMethod> rootCallers = rootCallerIndex.getRootCallerMethods(m);
+			if (rootCallers.isEmpty())
+			{
+				continue;
+			}
+			
+			writeCallerGraph(graphWriter, m, methodsExpanded);
+			graphWriter.writeHit(m, rootCallers,
+					curDataBlockInfo.dataBlockId + "," + curDataBlockInfo.keywords.toString());
+		}
 	}
 }
 
@@ -253,7 +413,30 @@ class RootCallerMethodInspector
  */
 class MethodHitInfo
 {
-	String dataBlockId;
+	int dataBlockId;
 	Set<String> keywords;
 	SootMethod methodHit;
-}
\ No newline at end of file
+}
+/**
+	
+	Data class for the status of walking up from a data block to root callers.
+	
+	In parallel inspection, each worker walks with its own status.
+	
+ */
+class CallChainWalkState
+{
+	// Methods on current call chain,
+	// they are given by method numbers of Call Graph index
+	int[] callChain = new int[64];
+	int callChainSize;
+	BitSet methodsOnChain = new BitSet();
+	
+	// Output buffer for root caller method info
+	StringBuilder rootCallerMethodInfo;
+	
+	CallChainWalkState(StringBuilder rootCallerMethodInfo)
+	{
+		this.rootCallerMethodInfo = rootCallerMethodInfo;
+	}
+}
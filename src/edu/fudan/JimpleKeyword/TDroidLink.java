@@ -45,7 +45,7 @@ class TDroidLink
 			
 			//
 			// Get the method of current statement 
-			SootMethod curMethod = Main.cfgOfApk.getMethodOf(curRawStat.statement);
+			SootMethod curMethod = Main.callGraphOfApk.getMethodOf(curRawStat.statement);
 			SootClass curClass = curMethod.getDeclaringClass();
 			
 			//
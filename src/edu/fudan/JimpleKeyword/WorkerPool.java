@@ -0,0 +1,534 @@
+package edu.fudan.JimpleKeyword;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+	
+	This class analyzes the APKs of batch with a pool of worker JVMs.
+	
+	Each worker JVM is this tool launched in worker mode with its own max heap size,
+	so that an APK which runs out of memory or takes too long
+	only takes down its own worker.
+	
+	The APKs are dispatched from a queue to idle workers.
+	A worker is killed when an APK isn't analyzed in time,
+	and it is restarted after analyzing some APKs to shed the heap growth of Soot.
+	The results of all APKs are collected in one summary file.
+
+ */
+class WorkerPool
+{
+	// Command line switch launching this tool in worker mode
+	static final String WORKER_SWITCH = "--worker";
+	
+	//
+	// Worker reports the result of an APK in a line of stdout
+	// beginning with the prefix, followed by status and failure reason
+	static final String RESULT_PREFIX = "[RESULT] ";
+	static final String STATUS_OK = "OK";
+	static final String STATUS_FAILED = "FAILED";
+	
+	//
+	// Status of APKs which are decided by supervisor
+	static final String STATUS_TIMEOUT = "TIMEOUT";
+	static final String STATUS_CRASHED = "CRASHED";
+	
+	// Name of summary file in output directory
+	static final String SUMMARY_FILE_NAME = "batch-summary.log";
+	
+	// Put to the result queue of worker when its stdout is closed,
+	// it's never equal to any line reported by worker
+	private static final Object WORKER_EXITED = new Object();
+	
+	// Separator of the fields in summary file,
+	// failure reasons may contain commas but not tabs
+	private static final String SUMMARY_SEPARATOR = "\t";
+	
+	// Command line switches which only make sense for supervisor,
+	// each of them takes an argument
+	private static final List<String> SUPERVISOR_SWITCHES =
+			Arrays.asList("--batch", "--workers", "--worker-heap", "--apk-timeout", "--apks-per-worker");
+	
+	// Command line launching a worker JVM
+	private List<String> workerCommand;
+	
+	// Directory of result files
+	private File outputDir;
+	
+	/**
+		
+		Pick out the command line arguments passed to workers.
+		
+		The switches of supervisor are removed,
+		and the worker switch is appended.
+	
+	 */
+	static List<String> getWorkerArgs(String[] args)
+	{
+		List<String> workerArgs = new ArrayList<String>();
+		for (int i=0; i<args.length; i++)
+		{
+			if (SUPERVISOR_SWITCHES.contains(args[i]))
+			{
+				// Skip the switch and its argument
+				i++;
+				continue;
+			}
+			
+			workerArgs.add(args[i]);
+		}
+		workerArgs.add(WORKER_SWITCH);
+		
+		return workerArgs;
+	}
+	
+	/**
+		
+		Mark the result file of an APK failed by supervisor.
+		
+		The worker didn't finish the result file,
+		so the reason is appended to what has been written.
+	
+	 */
+	private void markResultFileFailed(String apkFile, String failureReason)
+	{
+		File tempResultFile = Main.GetResultFile(outputDir, apkFile, Main.TEMP_RESULT_FILE_SUFFIX);
+		File resultFile = Main.GetResultFile(outputDir, apkFile, Main.FAILED_RESULT_FILE_SUFFIX);
+		
+		try
+		{
+			PrintStream resultOut = new PrintStream(new FileOutputStream(tempResultFile, true));
+			resultOut.println(failureReason);
+			resultOut.close();
+		}
+		catch (FileNotFoundException e)
+		{
+			System.err.println("[WARN] Failed to write result file " + tempResultFile.getPath());
+			return;
+		}
+		
+		resultFile.delete();
+		if (!tempResultFile.renameTo(resultFile))
+		{
+			System.err.println("[WARN] Failed to rename temp result file to " + resultFile.getPath());
+		}
+	}
+	
+	/**
+		
+		Analyze APKs with worker JVMs of the pool.
+		
+		The summary is written to output directory
+		in the order of APKs passed in.
+	
+	 */
+	void analyzeApks(final List<String> apkFiles)
+	{
+		final ApkOutcome[] outcomes = new ApkOutcome[apkFiles.size()];
+		final AtomicInteger nextApkIndex = new AtomicInteger();
+		
+		//
+		// Each thread drives a worker JVM,
+		// and takes next APK from the queue when the worker is idle
+		ExecutorService executor = Executors.newFixedThreadPool(Config.batchWorkers);
+		try
+		{
+			List<Future<Void>> results = new ArrayList<Future<Void>>();
+			for (int i=0; i<Config.batchWorkers; i++)
+			{
+				results.add(executor.submit(new Callable<Void>()
+				{
+					@Override
+					public Void call()
+					{
+						driveWorker(apkFiles, nextApkIndex, outcomes);
+						return null;
+					}
+				}));
+			}
+			
+			for (Future<Void> result : results)
+			{
+				result.get();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			throw new RuntimeException("Worker pool is interrupted", e);
+		}
+		catch (ExecutionException e)
+		{
+			// Unexpected error in supervisor, Fail-fast
+			throw new RuntimeException("Unexpected error in worker pool", e.getCause());
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+		
+		writeSummary(apkFiles, outcomes);
+	}
+	
+	/**
+		
+		Analyze the APKs taken from queue with a worker JVM,
+		until the queue is empty.
+		
+		The worker is replaced when it's dead, killed,
+		or has analyzed enough APKs.
+	
+	 */
+	private void driveWorker(List<String> apkFiles, AtomicInteger nextApkIndex, ApkOutcome[] outcomes)
+	{
+		WorkerProcess worker = null;
+		try
+		{
+			int apkIndex;
+			while ((apkIndex = nextApkIndex.getAndIncrement()) < apkFiles.size())
+			{
+				String apkFile = apkFiles.get(apkIndex);
+				if (worker == null)
+				{
+					worker = new WorkerProcess();
+				}
+				
+				ApkOutcome outcome = worker.analyze(apkFile);
+				outcomes[apkIndex] = outcome;
+				System.err.println("[INFO] Worker pool: " + outcome.status + " " + apkFile);
+				
+				if (outcome.status.equals(STATUS_TIMEOUT) || outcome.status.equals(STATUS_CRASHED))
+				{
+					//
+					// The worker is gone with its unfinished result file
+					markResultFileFailed(apkFile, outcome.status + " " + outcome.failureReason);
+					worker = null;
+				}
+				else if (Config.apksPerWorker > 0 && worker.apksAnalyzed >= Config.apksPerWorker)
+				{
+					//
+					// Restart worker to shed heap growth
+					worker.stop();
+					worker = null;
+				}
+			}
+		}
+		finally
+		{
+			if (worker != null)
+			{
+				worker.stop();
+			}
+		}
+	}
+	
+	/**
+		
+		Write the summary of APKs to output directory and stderr.
+	
+	 */
+	private void writeSummary(List<String> apkFiles, ApkOutcome[] outcomes)
+	{
+		File summaryFile = new File(outputDir, SUMMARY_FILE_NAME);
+		PrintStream summaryOut;
+		try
+		{
+			summaryOut = new PrintStream(new FileOutputStream(summaryFile));
+		}
+		catch (FileNotFoundException e)
+		{
+			// Unexpected error, Fail-fast
+			throw new RuntimeException("Unexpected IO error on " + summaryFile.getPath(), e);
+		}
+		
+		int okCount = 0;
+		for (int i=0; i<apkFiles.size(); i++)
+		{
+			ApkOutcome outcome = outcomes[i];
+			summaryOut.println(outcome.status + SUMMARY_SEPARATOR + outcome.timeInMs
+					+ SUMMARY_SEPARATOR + apkFiles.get(i)
+					+ SUMMARY_SEPARATOR + (outcome.failureReason == null ? "" : outcome.failureReason.replace('\t', ' ')));
+			
+			if (outcome.status.equals(STATUS_OK))
+			{
+				okCount++;
+			}
+			else
+			{
+				System.err.println("[INFO] Worker pool: failed APK " + apkFiles.get(i)
+						+ " (" + outcome.status + ") " + outcome.failureReason);
+			}
+		}
+		summaryOut.close();
+		
+		System.err.println(String.format("[INFO] Worker pool finished: %d APKs analyzed, %d failed, summary in %s",
+				okCount, apkFiles.size() - okCount, summaryFile.getPath()));
+	}
+	
+	/**
+		
+		Initializer of this class
+		
+		The worker JVMs are launched with the same classpath
+		and JVM options as this one.
+		The max heap size of supervisor is replaced when worker heap size is set,
+		and debugger agent isn't passed on since its port can't be shared.
+	
+	 */
+	WorkerPool(List<String> workerArgs, File outputDir)
+	{
+		this.outputDir = outputDir;
+		
+		workerCommand = new ArrayList<String>();
+		workerCommand.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		for (String jvmOption : ManagementFactory.getRuntimeMXBean().getInputArguments())
+		{
+			if ((Config.workerHeapSize != null
+						&& (jvmOption.startsWith("-Xmx") || jvmOption.startsWith("-XX:MaxHeapSize=")))
+					|| jvmOption.startsWith("-agentlib:jdwp") || jvmOption.startsWith("-Xrunjdwp"))
+			{
+				continue;
+			}
+			
+			workerCommand.add(jvmOption);
+		}
+		if (Config.workerHeapSize != null)
+		{
+			workerCommand.add("-Xmx" + Config.workerHeapSize);
+		}
+		workerCommand.add("-cp");
+		workerCommand.add(System.getProperty("java.class.path"));
+		workerCommand.add(Main.class.getName());
+		workerCommand.addAll(workerArgs);
+	}
+	
+	/**
+		
+		A worker JVM launched by the pool
+	
+	 */
+	private class WorkerProcess
+	{
+		private Process process;
+		
+		// Stdin of worker, where APKs are sent
+		private Writer apkWriter;
+		
+		// Result lines reported by worker,
+		// followed by WORKER_EXITED when its stdout is closed
+		private BlockingQueue<Object> resultLines = new LinkedBlockingQueue<Object>();
+		
+		// Number of APKs analyzed by this worker
+		int apksAnalyzed;
+		
+		WorkerProcess()
+		{
+			ProcessBuilder processBuilder = new ProcessBuilder(workerCommand);
+			processBuilder.redirectError(ProcessBuilder.Redirect.INHERIT);
+			try
+			{
+				process = processBuilder.start();
+			}
+			catch (IOException e)
+			{
+				// Unexpected error, Fail-fast
+				throw new RuntimeException("Unexpected IO error on launching worker JVM", e);
+			}
+			apkWriter = new OutputStreamWriter(process.getOutputStream());
+			
+			//
+			// Read the stdout of worker in background,
+			// so that we can wait for result with time limit
+			final BufferedReader resultReader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+			Thread readerThread = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						String line;
+						while ((line = resultReader.readLine()) != null)
+						{
+							if (line.startsWith(RESULT_PREFIX))
+							{
+								resultLines.add(line.substring(RESULT_PREFIX.length()));
+							}
+							else
+							{
+								// Other output of worker is passed through
+								System.err.println(line);
+							}
+						}
+					}
+					catch (IOException e)
+					{
+						// Worker is killed
+					}
+					
+					resultLines.add(WORKER_EXITED);
+				}
+			});
+			readerThread.setDaemon(true);
+			readerThread.start();
+		}
+		
+		/**
+			
+			Send an APK to worker and wait for its result.
+			
+			If time limit is reached, the worker is killed.
+		
+		 */
+		ApkOutcome analyze(String apkFile)
+		{
+			ApkOutcome outcome = new ApkOutcome();
+			long startTime = System.currentTimeMillis();
+			
+			Object resultLine;
+			try
+			{
+				apkWriter.write(apkFile + "\n");
+				apkWriter.flush();
+				
+				if (Config.apkTimeoutSeconds > 0)
+				{
+					resultLine = resultLines.poll(Config.apkTimeoutSeconds, TimeUnit.SECONDS);
+				}
+				else
+				{
+					resultLine = resultLines.take();
+				}
+			}
+			catch (IOException e)
+			{
+				// Worker has exited before APK is sent
+				resultLine = WORKER_EXITED;
+			}
+			catch (InterruptedException e)
+			{
+				kill();
+				throw new RuntimeException("Worker pool is interrupted", e);
+			}
+			
+			outcome.timeInMs = System.currentTimeMillis() - startTime;
+			apksAnalyzed++;
+			
+			if (resultLine == null)
+			{
+				kill();
+				outcome.status = STATUS_TIMEOUT;
+				outcome.failureReason = "Not analyzed in " + Config.apkTimeoutSeconds + " seconds";
+			}
+			else if (resultLine == WORKER_EXITED)
+			{
+				outcome.status = STATUS_CRASHED;
+				outcome.failureReason = "Worker exited with code " + kill();
+			}
+			else
+			{
+				//
+				// Status and failure reason reported by worker
+				String reportedLine = (String)resultLine;
+				int separatorIndex = reportedLine.indexOf(' ');
+				if (separatorIndex < 0)
+				{
+					outcome.status = reportedLine;
+				}
+				else
+				{
+					outcome.status = reportedLine.substring(0, separatorIndex);
+					outcome.failureReason = reportedLine.substring(separatorIndex + 1);
+				}
+			}
+			
+			return outcome;
+		}
+		
+		/**
+			
+			Let worker exit after analyzing the APKs sent.
+		
+		 */
+		void stop()
+		{
+			try
+			{
+				apkWriter.close();
+			}
+			catch (IOException e)
+			{
+				// Worker has exited
+			}
+			
+			try
+			{
+				if (!process.waitFor(60, TimeUnit.SECONDS))
+				{
+					kill();
+				}
+			}
+			catch (InterruptedException e)
+			{
+				kill();
+				Thread.currentThread().interrupt();
+			}
+		}
+		
+		/**
+			
+			Kill worker and return its exit code.
+		
+		 */
+		int kill()
+		{
+			process.destroyForcibly();
+			
+			try
+			{
+				return process.waitFor();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				return -1;
+			}
+		}
+	}
+}
+
+/**
+	
+	Data class for recording the result of an APK analyzed by worker
+
+ */
+class ApkOutcome
+{
+	// One of the status in WorkerPool
+	String status;
+	
+	// Null if the APK is analyzed
+	String failureReason;
+	
+	long timeInMs;
+}
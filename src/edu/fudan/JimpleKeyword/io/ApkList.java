@@ -0,0 +1,116 @@
+package edu.fudan.JimpleKeyword.io;
+
+import java.io.File;
+import java.nio.file.FileSystemNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.fudan.JimpleKeyword.util.FileUtil;
+
+/**
+	
+	This class is used for collecting the APK files analyzed in batch mode.
+	
+	The APK files are either the ones in a directory,
+	or the ones listed in a text file, one path per line.
+
+ */
+public class ApkList
+{
+	// Paths of APK files in the order they are analyzed
+	private ArrayList<String> apkList = new ArrayList<String>();
+	
+	/**
+		
+		Canonicalize text line read from APK list file.
+		If we should skip current line, null is returned.
+	
+	 */
+	private String canonicalizeListLine(String listLine)
+	{
+		// Canonicalize the line
+		listLine = listLine.trim();
+		
+		// Is empty line?
+		if (listLine.isEmpty())
+		{
+			// Skip empty line
+			return null;
+		}
+		// Is comment line?
+		// Comment lines begin with '#'
+		if (listLine.charAt(0) == '#')
+		{
+			// Skip comment line
+			return null;
+		}
+		
+		// Return processed list line
+		return listLine;
+	}
+	
+	/**
+	
+	 	Collect the APK files in a directory or an APK list file.
+	
+	 	The APK files in a directory are sorted by name,
+	 	so that the batch is analyzed in the same order every time.
+	
+	 */
+	public ApkList(String batchSource)
+	{
+		File batchSourceFile = new File(batchSource);
+		if (batchSourceFile.isDirectory())
+		{
+			//
+			// Collect APK files in directory
+			File[] files = batchSourceFile.listFiles();
+			if (files == null)
+			{
+				throw new RuntimeException("Unexpected IO error on listing " + batchSource);
+			}
+			
+			Arrays.sort(files);
+			for (File file : files)
+			{
+				if (file.isFile() && file.getName().endsWith(".apk"))
+				{
+					apkList.add(file.getPath());
+				}
+			}
+		}
+		else if (batchSourceFile.isFile())
+		{
+			//
+			// Read content of APK list file to array list in class
+			List<String> listLines = FileUtil.readAllLinesFromFile(batchSource);
+			for (String listLine : listLines)
+			{
+				// Canonicalize list line
+				// and skip lines we should ignore
+				listLine = canonicalizeListLine(listLine);
+				if (listLine == null)
+				{
+					continue;
+				}
+				
+				apkList.add(listLine);
+			}
+		}
+		else
+		{
+			throw new FileSystemNotFoundException("APK directory or list file doesn't exist: " + batchSource);
+		}
+	}
+	
+	/**
+		
+		Get the paths of APK files in the order they should be analyzed
+	
+	 */
+	public List<String> getApkFiles()
+	{
+		return apkList;
+	}
+}
@@ -0,0 +1,631 @@
+package edu.fudan.JimpleKeyword.io;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+	
+	This class reads the dex files in an APK without starting Soot.
+	
+	The central directory of zip is read and walked to find classes*.dex,
+	then only the dex files are read from APK into heap buffers,
+	and compressed ones are inflated.
+	The APK isn't memory-mapped, as a mapping can't be released
+	until it's garbage collected and keeps the APK file open meanwhile.
+	
+	The string pool, method references and code items of dex
+	are decoded from the dex file directly.
+
+ */
+public class DexFile
+{
+	//
+	// Signatures of zip records
+	private static final int ZIP_END_OF_CENTRAL_DIR_SIG = 0x06054b50;
+	private static final int ZIP_CENTRAL_DIR_ENTRY_SIG = 0x02014b50;
+	private static final int ZIP_LOCAL_HEADER_SIG = 0x04034b50;
+	
+	//
+	// Compression methods of zip entries
+	private static final int ZIP_METHOD_STORED = 0;
+	private static final int ZIP_METHOD_DEFLATED = 8;
+	
+	//
+	// Offsets in dex header
+	private static final int DEX_STRING_IDS_SIZE_OFFSET = 0x38;
+	private static final int DEX_STRING_IDS_OFF_OFFSET = 0x3C;
+	private static final int DEX_TYPE_IDS_OFF_OFFSET = 0x44;
+	private static final int DEX_PROTO_IDS_OFF_OFFSET = 0x4C;
+	private static final int DEX_METHOD_IDS_SIZE_OFFSET = 0x58;
+	private static final int DEX_METHOD_IDS_OFF_OFFSET = 0x5C;
+	private static final int DEX_CLASS_DEFS_SIZE_OFFSET = 0x60;
+	private static final int DEX_CLASS_DEFS_OFF_OFFSET = 0x64;
+	
+	// Size of instructions in 16-bit code units, indexed by opcode.
+	// 0 marks the opcodes we don't decode, e.g. unused ones,
+	// and the code with them isn't decoded.
+	private static final int[] INSTRUCTION_SIZES = new int[256];
+	static
+	{
+		setInstructionSizes(0x00, 0x01, 1);		// nop, move
+		setInstructionSizes(0x02, 0x02, 2);		// move/from16
+		setInstructionSizes(0x03, 0x03, 3);		// move/16
+		setInstructionSizes(0x04, 0x04, 1);		// move-wide
+		setInstructionSizes(0x05, 0x05, 2);
+		setInstructionSizes(0x06, 0x06, 3);
+		setInstructionSizes(0x07, 0x07, 1);		// move-object
+		setInstructionSizes(0x08, 0x08, 2);
+		setInstructionSizes(0x09, 0x09, 3);
+		setInstructionSizes(0x0a, 0x12, 1);		// move-result, return, const/4
+		setInstructionSizes(0x13, 0x13, 2);		// const/16
+		setInstructionSizes(0x14, 0x14, 3);		// const
+		setInstructionSizes(0x15, 0x16, 2);		// const/high16, const-wide/16
+		setInstructionSizes(0x17, 0x17, 3);		// const-wide/32
+		setInstructionSizes(0x18, 0x18, 5);		// const-wide
+		setInstructionSizes(0x19, 0x1a, 2);		// const-wide/high16, const-string
+		setInstructionSizes(0x1b, 0x1b, 3);		// const-string/jumbo
+		setInstructionSizes(0x1c, 0x1c, 2);		// const-class
+		setInstructionSizes(0x1d, 0x1e, 1);		// monitor-enter/exit
+		setInstructionSizes(0x1f, 0x20, 2);		// check-cast, instance-of
+		setInstructionSizes(0x21, 0x21, 1);		// array-length
+		setInstructionSizes(0x22, 0x23, 2);		// new-instance, new-array
+		setInstructionSizes(0x24, 0x26, 3);		// filled-new-array, fill-array-data
+		setInstructionSizes(0x27, 0x28, 1);		// throw, goto
+		setInstructionSizes(0x29, 0x29, 2);		// goto/16
+		setInstructionSizes(0x2a, 0x2c, 3);		// goto/32, packed/sparse-switch
+		setInstructionSizes(0x2d, 0x3d, 2);		// cmp, if-test, if-testz
+		setInstructionSizes(0x44, 0x6d, 2);		// aget/aput, iget/iput, sget/sput
+		setInstructionSizes(0x6e, 0x72, 3);		// invoke-kind
+		setInstructionSizes(0x74, 0x78, 3);		// invoke-kind/range
+		setInstructionSizes(0x7b, 0x8f, 1);		// unop
+		setInstructionSizes(0x90, 0xaf, 2);		// binop
+		setInstructionSizes(0xb0, 0xcf, 1);		// binop/2addr
+		setInstructionSizes(0xd0, 0xe2, 2);		// binop/lit16, binop/lit8
+	}
+	
+	//
+	// Pseudo-instructions of data payloads, which begin with nop opcode
+	private static final int PACKED_SWITCH_PAYLOAD = 0x0100;
+	private static final int SPARSE_SWITCH_PAYLOAD = 0x0200;
+	private static final int FILL_ARRAY_DATA_PAYLOAD = 0x0300;
+	
+	// Names of dex files in APK, e.g. classes.dex, classes2.dex
+	private static Pattern dexFileNamePattern = Pattern.compile("classes[0-9]*\\.dex");
+	
+	// Content of dex file in little-endian
+	private ByteBuffer dexBuffer;
+	
+	private static void setInstructionSizes(int firstOpcode, int lastOpcode, int size)
+	{
+		for (int opcode = firstOpcode; opcode <= lastOpcode; opcode++)
+		{
+			INSTRUCTION_SIZES[opcode] = size;
+		}
+	}
+	
+	/**
+		
+		Find the end of central directory record of zip in the tail of APK,
+		the record is followed by a comment of at most 64KB.
+	
+	 */
+	private static int findEndOfCentralDir(ByteBuffer tailBuffer)
+	{
+		int lowestOffset = Math.max(0, tailBuffer.limit() - 22 - 0xFFFF);
+		for (int offset = tailBuffer.limit() - 22; offset >= lowestOffset; offset--)
+		{
+			if (tailBuffer.getInt(offset) == ZIP_END_OF_CENTRAL_DIR_SIG)
+			{
+				return offset;
+			}
+		}
+		
+		throw new RuntimeException("Malformed APK: end of central directory not found");
+	}
+	
+	/**
+		
+		Read given range of APK into a little-endian heap buffer.
+	
+	 */
+	private static ByteBuffer readApkRange(RandomAccessFile apkRandomAccessFile, long offset, int length)
+			throws IOException
+	{
+		byte[] bytes = new byte[length];
+		apkRandomAccessFile.seek(offset);
+		apkRandomAccessFile.readFully(bytes);
+		
+		return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	/**
+		
+		Get the content of a dex file in APK.
+		
+		Only the dex file itself is read, not the rest of APK.
+	
+	 */
+	private static ByteBuffer readDexFile(RandomAccessFile apkRandomAccessFile, long localHeaderOffset,
+			int method, int compressedSize, int uncompressedSize) throws IOException
+	{
+		ByteBuffer localHeader = readApkRange(apkRandomAccessFile, localHeaderOffset, 30);
+		if (localHeader.getInt(0) != ZIP_LOCAL_HEADER_SIG)
+		{
+			throw new RuntimeException("Malformed APK: bad local header at " + localHeaderOffset);
+		}
+		
+		int nameLength = localHeader.getShort(26) & 0xFFFF;
+		int extraLength = localHeader.getShort(28) & 0xFFFF;
+		long dataOffset = localHeaderOffset + 30 + nameLength + extraLength;
+		
+		ByteBuffer compressedData = readApkRange(apkRandomAccessFile, dataOffset, compressedSize);
+		
+		if (method == ZIP_METHOD_STORED)
+		{
+			return compressedData;
+		}
+		else if (method == ZIP_METHOD_DEFLATED)
+		{
+			byte[] input = compressedData.array();
+			byte[] output = new byte[uncompressedSize];
+			
+			Inflater inflater = new Inflater(true);
+			try
+			{
+				inflater.setInput(input);
+				int outputLength = 0;
+				while (outputLength < uncompressedSize && !inflater.finished())
+				{
+					int inflatedLength = inflater.inflate(output, outputLength, uncompressedSize - outputLength);
+					if (inflatedLength == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+					{
+						break;
+					}
+					outputLength += inflatedLength;
+				}
+			}
+			catch (DataFormatException e)
+			{
+				throw new RuntimeException("Malformed APK: bad compressed dex file", e);
+			}
+			finally
+			{
+				inflater.end();
+			}
+			
+			return ByteBuffer.wrap(output).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		else
+		{
+			throw new RuntimeException("Malformed APK: unsupported compression method " + method);
+		}
+	}
+	
+	/**
+		
+		Read the dex files in given APK, in the order they appear in zip.
+	
+	 */
+	public static List<DexFile> readDexFilesOfApk(String apkFile)
+	{
+		List<DexFile> dexFiles = new ArrayList<DexFile>();
+		
+		RandomAccessFile apkRandomAccessFile = null;
+		try
+		{
+			apkRandomAccessFile = new RandomAccessFile(apkFile, "r");
+			long apkSize = apkRandomAccessFile.length();
+			if (apkSize > Integer.MAX_VALUE)
+			{
+				throw new RuntimeException("APK larger than 2GB isn't supported: " + apkFile);
+			}
+			
+			//
+			// The end of central directory is in the tail of APK,
+			// i.e. the record and a comment of at most 64KB
+			int tailLength = (int)Math.min(apkSize, 22 + 0xFFFF);
+			ByteBuffer tailBuffer = readApkRange(apkRandomAccessFile, apkSize - tailLength, tailLength);
+			int endOfCentralDir = findEndOfCentralDir(tailBuffer);
+			int entryCount = tailBuffer.getShort(endOfCentralDir + 10) & 0xFFFF;
+			int centralDirSize = tailBuffer.getInt(endOfCentralDir + 12);
+			long centralDirOffset = tailBuffer.getInt(endOfCentralDir + 16) & 0xFFFFFFFFL;
+			
+			//
+			// Walk the central directory of zip
+			ByteBuffer centralDir = readApkRange(apkRandomAccessFile, centralDirOffset, centralDirSize);
+			int entryOffset = 0;
+			for (int i=0; i<entryCount; i++)
+			{
+				if (centralDir.getInt(entryOffset) != ZIP_CENTRAL_DIR_ENTRY_SIG)
+				{
+					throw new RuntimeException("Malformed APK: bad central directory entry at "
+							+ (centralDirOffset + entryOffset));
+				}
+				
+				int method = centralDir.getShort(entryOffset + 10) & 0xFFFF;
+				int compressedSize = centralDir.getInt(entryOffset + 20);
+				int uncompressedSize = centralDir.getInt(entryOffset + 24);
+				int nameLength = centralDir.getShort(entryOffset + 28) & 0xFFFF;
+				int extraLength = centralDir.getShort(entryOffset + 30) & 0xFFFF;
+				int commentLength = centralDir.getShort(entryOffset + 32) & 0xFFFF;
+				long localHeaderOffset = centralDir.getInt(entryOffset + 42) & 0xFFFFFFFFL;
+				
+				String entryName = new String(centralDir.array(), entryOffset + 46, nameLength, "UTF-8");
+				
+				if (dexFileNamePattern.matcher(entryName).matches())
+				{
+					ByteBuffer dexBuffer = readDexFile(apkRandomAccessFile, localHeaderOffset,
+							method, compressedSize, uncompressedSize);
+					dexFiles.add(new DexFile(dexBuffer));
+				}
+				
+				entryOffset += 46 + nameLength + extraLength + commentLength;
+			}
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException("Unexpected IO error on " + apkFile, e);
+		}
+		finally
+		{
+			if (apkRandomAccessFile != null)
+			{
+				try
+				{
+					apkRandomAccessFile.close();
+				}
+				catch (IOException e)
+				{
+					// Nothing to do on closing a read-only file
+				}
+			}
+		}
+		
+		return dexFiles;
+	}
+	
+	/**
+		
+		Read an unsigned LEB128 value at given position of dex.
+		The position after the value is saved to position[0].
+	
+	 */
+	private int readUleb128(int[] position)
+	{
+		int value = 0;
+		int shift = 0;
+		byte curByte;
+		do
+		{
+			curByte = dexBuffer.get(position[0]++);
+			value |= (curByte & 0x7F) << shift;
+			shift += 7;
+		}
+		while (curByte < 0);
+		
+		return value;
+	}
+	
+	public int getStringCount()
+	{
+		return dexBuffer.getInt(DEX_STRING_IDS_SIZE_OFFSET);
+	}
+	
+	/**
+		
+		Decode a string in string pool of dex.
+		
+		Each string data item is the length in UTF-16 code units in ULEB128,
+		followed by the string in MUTF-8 ending with 0.
+	
+	 */
+	public String getString(int stringIdx)
+	{
+		int stringIdsOff = dexBuffer.getInt(DEX_STRING_IDS_OFF_OFFSET);
+		int[] position = { dexBuffer.getInt(stringIdsOff + stringIdx * 4) };
+		int utf16Length = readUleb128(position);
+		
+		char[] chars = new char[utf16Length];
+		int curPosition = position[0];
+		for (int i=0; i<utf16Length; i++)
+		{
+			int first = dexBuffer.get(curPosition++) & 0xFF;
+			if (first < 0x80)
+			{
+				chars[i] = (char)first;
+			}
+			else if ((first & 0xE0) == 0xC0)
+			{
+				int second = dexBuffer.get(curPosition++) & 0x3F;
+				chars[i] = (char)(((first & 0x1F) << 6) | second);
+			}
+			else if ((first & 0xF0) == 0xE0)
+			{
+				int second = dexBuffer.get(curPosition++) & 0x3F;
+				int third = dexBuffer.get(curPosition++) & 0x3F;
+				chars[i] = (char)(((first & 0x0F) << 12) | (second << 6) | third);
+			}
+			else
+			{
+				throw new RuntimeException("Malformed dex file: bad MUTF-8 string at " + curPosition);
+			}
+		}
+		
+		return new String(chars);
+	}
+	
+	/**
+		
+		Get the name of a type in Java format, e.g. java.lang.String, int[]
+	
+	 */
+	public String getTypeName(int typeIdx)
+	{
+		int typeIdsOff = dexBuffer.getInt(DEX_TYPE_IDS_OFF_OFFSET);
+		String descriptor = getString(dexBuffer.getInt(typeIdsOff + typeIdx * 4));
+		
+		//
+		// Strip array dimensions
+		int dimensions = 0;
+		while (descriptor.charAt(dimensions) == '[')
+		{
+			dimensions++;
+		}
+		
+		String typeName;
+		switch (descriptor.charAt(dimensions))
+		{
+		case 'V': typeName = "void"; break;
+		case 'Z': typeName = "boolean"; break;
+		case 'B': typeName = "byte"; break;
+		case 'S': typeName = "short"; break;
+		case 'C': typeName = "char"; break;
+		case 'I': typeName = "int"; break;
+		case 'J': typeName = "long"; break;
+		case 'F': typeName = "float"; break;
+		case 'D': typeName = "double"; break;
+		default:
+			// Class type in Lcom/example/Foo; format
+			typeName = descriptor.substring(dimensions + 1, descriptor.length() - 1).replace('/', '.');
+			break;
+		}
+		
+		StringBuilder typeNameBuilder = new StringBuilder(typeName);
+		for (int i=0; i<dimensions; i++)
+		{
+			typeNameBuilder.append("[]");
+		}
+		
+		return typeNameBuilder.toString();
+	}
+	
+	public int getMethodIdCount()
+	{
+		return dexBuffer.getInt(DEX_METHOD_IDS_SIZE_OFFSET);
+	}
+	
+	public String getMethodName(int methodIdx)
+	{
+		int methodIdsOff = dexBuffer.getInt(DEX_METHOD_IDS_OFF_OFFSET);
+		return getString(dexBuffer.getInt(methodIdsOff + methodIdx * 8 + 4));
+	}
+	
+	/**
+		
+		Get the parameter types of a method reference in Java format
+	
+	 */
+	public List<String> getMethodParameterTypes(int methodIdx)
+	{
+		int methodIdsOff = dexBuffer.getInt(DEX_METHOD_IDS_OFF_OFFSET);
+		int protoIdx = dexBuffer.getShort(methodIdsOff + methodIdx * 8 + 2) & 0xFFFF;
+		
+		int protoIdsOff = dexBuffer.getInt(DEX_PROTO_IDS_OFF_OFFSET);
+		int parametersOff = dexBuffer.getInt(protoIdsOff + protoIdx * 12 + 8);
+		
+		List<String> parameterTypes = new ArrayList<String>();
+		if (parametersOff != 0)
+		{
+			int parameterCount = dexBuffer.getInt(parametersOff);
+			for (int i=0; i<parameterCount; i++)
+			{
+				parameterTypes.add(getTypeName(dexBuffer.getShort(parametersOff + 4 + i * 2) & 0xFFFF));
+			}
+		}
+		
+		return parameterTypes;
+	}
+	
+	/**
+		
+		Get the signature of a method reference in Soot format,
+		e.g. <com.example.Foo: void bar(int,java.lang.String)>
+	
+	 */
+	public String getMethodSignature(int methodIdx)
+	{
+		int methodIdsOff = dexBuffer.getInt(DEX_METHOD_IDS_OFF_OFFSET);
+		int classIdx = dexBuffer.getShort(methodIdsOff + methodIdx * 8) & 0xFFFF;
+		int protoIdx = dexBuffer.getShort(methodIdsOff + methodIdx * 8 + 2) & 0xFFFF;
+		
+		int protoIdsOff = dexBuffer.getInt(DEX_PROTO_IDS_OFF_OFFSET);
+		int returnTypeIdx = dexBuffer.getInt(protoIdsOff + protoIdx * 12 + 4);
+		
+		StringBuilder signature = new StringBuilder();
+		signature.append('<').append(getTypeName(classIdx)).append(": ");
+		signature.append(getTypeName(returnTypeIdx)).append(' ');
+		signature.append(getMethodName(methodIdx)).append('(');
+		
+		List<String> parameterTypes = getMethodParameterTypes(methodIdx);
+		for (int i=0; i<parameterTypes.size(); i++)
+		{
+			if (i > 0)
+			{
+				signature.append(',');
+			}
+			signature.append(parameterTypes.get(i));
+		}
+		signature.append(")>");
+		
+		return signature.toString();
+	}
+	
+	/**
+		
+		Get the methods defined with code in dex
+	
+	 */
+	public List<CodeMethod> getMethodsWithCode()
+	{
+		List<CodeMethod> methodsWithCode = new ArrayList<CodeMethod>();
+		
+		int classDefsSize = dexBuffer.getInt(DEX_CLASS_DEFS_SIZE_OFFSET);
+		int classDefsOff = dexBuffer.getInt(DEX_CLASS_DEFS_OFF_OFFSET);
+		for (int i=0; i<classDefsSize; i++)
+		{
+			int classDataOff = dexBuffer.getInt(classDefsOff + i * 32 + 24);
+			if (classDataOff == 0)
+			{
+				continue;
+			}
+			
+			//
+			// Walk class_data_item, skip the fields
+			// and read the direct and virtual methods
+			int[] position = { classDataOff };
+			int staticFieldsSize = readUleb128(position);
+			int instanceFieldsSize = readUleb128(position);
+			int directMethodsSize = readUleb128(position);
+			int virtualMethodsSize = readUleb128(position);
+			
+			for (int j=0; j<(staticFieldsSize + instanceFieldsSize) * 2; j++)
+			{
+				readUleb128(position);
+			}
+			
+			for (int j=0; j<2; j++)
+			{
+				int methodsSize = j == 0 ? directMethodsSize : virtualMethodsSize;
+				int methodIdx = 0;
+				for (int k=0; k<methodsSize; k++)
+				{
+					// Method index is the difference from the previous one
+					methodIdx += readUleb128(position);
+					readUleb128(position);				// access_flags
+					int codeOff = readUleb128(position);
+					
+					if (codeOff != 0)
+					{
+						CodeMethod codeMethod = new CodeMethod();
+						codeMethod.methodIdx = methodIdx;
+						codeMethod.codeOff = codeOff;
+						methodsWithCode.add(codeMethod);
+					}
+				}
+			}
+		}
+		
+		return methodsWithCode;
+	}
+	
+	/**
+		
+		Get the method references invoked in a code item.
+		
+		If there is an instruction we don't decode, null is returned.
+	
+	 */
+	public int[] getInvokedMethodIds(int codeOff)
+	{
+		int insnsSize = dexBuffer.getInt(codeOff + 12);
+		int insnsOff = codeOff + 16;
+		
+		int[] invokedMethodIds = new int[8];
+		int invokeCount = 0;
+		
+		int curUnit = 0;
+		while (curUnit < insnsSize)
+		{
+			int firstUnit = dexBuffer.getShort(insnsOff + curUnit * 2) & 0xFFFF;
+			int opcode = firstUnit & 0xFF;
+			
+			//
+			// Skip data payloads
+			if (firstUnit == PACKED_SWITCH_PAYLOAD)
+			{
+				int size = dexBuffer.getShort(insnsOff + (curUnit + 1) * 2) & 0xFFFF;
+				curUnit += size * 2 + 4;
+				continue;
+			}
+			if (firstUnit == SPARSE_SWITCH_PAYLOAD)
+			{
+				int size = dexBuffer.getShort(insnsOff + (curUnit + 1) * 2) & 0xFFFF;
+				curUnit += size * 4 + 2;
+				continue;
+			}
+			if (firstUnit == FILL_ARRAY_DATA_PAYLOAD)
+			{
+				int elementWidth = dexBuffer.getShort(insnsOff + (curUnit + 1) * 2) & 0xFFFF;
+				int size = dexBuffer.getInt(insnsOff + (curUnit + 2) * 2);
+				curUnit += (int)(((long)size * elementWidth + 1) / 2) + 4;
+				continue;
+			}
+			
+			int instructionSize = INSTRUCTION_SIZES[opcode];
+			if (instructionSize == 0)
+			{
+				return null;
+			}
+			
+			//
+			// Record the method reference of invoke-kind and invoke-kind/range
+			if ((opcode >= 0x6e && opcode <= 0x72) || (opcode >= 0x74 && opcode <= 0x78))
+			{
+				if (invokeCount == invokedMethodIds.length)
+				{
+					int[] grownIds = new int[invokeCount * 2];
+					System.arraycopy(invokedMethodIds, 0, grownIds, 0, invokeCount);
+					invokedMethodIds = grownIds;
+				}
+				invokedMethodIds[invokeCount++] = dexBuffer.getShort(insnsOff + (curUnit + 1) * 2) & 0xFFFF;
+			}
+			
+			curUnit += instructionSize;
+		}
+		
+		int[] result = new int[invokeCount];
+		System.arraycopy(invokedMethodIds, 0, result, 0, invokeCount);
+		return result;
+	}
+	
+	private DexFile(ByteBuffer dexBuffer)
+	{
+		if (dexBuffer.limit() < 0x70 || dexBuffer.get(0) != 'd' || dexBuffer.get(1) != 'e' || dexBuffer.get(2) != 'x')
+		{
+			throw new RuntimeException("Malformed dex file: bad magic");
+		}
+		
+		this.dexBuffer = dexBuffer;
+	}
+	
+	/**
+		
+		Data class for a method defined with code in dex
+	
+	 */
+	public static class CodeMethod
+	{
+		// Index of method reference
+		public int methodIdx;
+		
+		// Offset of code item
+		public int codeOff;
+	}
+}
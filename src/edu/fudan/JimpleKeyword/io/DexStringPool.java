@@ -0,0 +1,99 @@
+package edu.fudan.JimpleKeyword.io;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+	
+	This class reads the string pools of dex files in an APK,
+	without starting Soot.
+	
+	The strings are decoded from the string data of dex lazily
+	while iterating, so a caller looking for a single string
+	can stop early without decoding the rest.
+	See DexFile for how dex files are read.
+	
+	Strings are unique in a dex file,
+	but the same string may appear in several dex files.
+
+ */
+public class DexStringPool implements Iterable<String>
+{
+	private List<DexFile> dexFiles;
+	
+	// Number of strings in all dex files
+	private int stringCount;
+	
+	/**
+		
+		Read the dex files in given APK
+	
+	 */
+	public DexStringPool(String apkFile)
+	{
+		dexFiles = DexFile.readDexFilesOfApk(apkFile);
+		for (DexFile dexFile : dexFiles)
+		{
+			stringCount += dexFile.getStringCount();
+		}
+	}
+	
+	/**
+		
+		Iterate the strings of dex files in order,
+		each string is decoded when it's reached.
+	
+	 */
+	@Override
+	public Iterator<String> iterator()
+	{
+		return new Iterator<String>()
+		{
+			private int dexFileIdx = 0;
+			private int stringIdx = 0;
+			
+			@Override
+			public boolean hasNext()
+			{
+				//
+				// Skip the dex files whose strings are all visited
+				while (dexFileIdx < dexFiles.size()
+						&& stringIdx >= dexFiles.get(dexFileIdx).getStringCount())
+				{
+					dexFileIdx++;
+					stringIdx = 0;
+				}
+				
+				return dexFileIdx < dexFiles.size();
+			}
+			
+			@Override
+			public String next()
+			{
+				if (!hasNext())
+				{
+					throw new NoSuchElementException();
+				}
+				
+				return dexFiles.get(dexFileIdx).getString(stringIdx++);
+			}
+			
+			@Override
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+	
+	public int getStringCount()
+	{
+		return stringCount;
+	}
+	
+	public int getDexFileCount()
+	{
+		return dexFiles.size();
+	}
+}
@@ -1,7 +1,10 @@
 package edu.fudan.JimpleKeyword.io;
 
-import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import edu.fudan.JimpleKeyword.Config;
 import edu.fudan.JimpleKeyword.util.FileUtil;
@@ -15,7 +18,14 @@ import edu.fudan.JimpleKeyword.util.FileUtil;
  */
 public class InterestedApiList 
 {
-	private ArrayList<String> interestedApiList = new ArrayList<String>();
+	// Signatures of interested APIs
+	private Set<String> interestedApiSignatures = new HashSet<String>();
+	// Names of interested APIs for quick screening
+	private Set<String> interestedApiNames = new HashSet<String>();
+	
+	// Pattern of method signature in Soot format
+	// e.g. <android.content.Intent: android.content.Intent putExtra(java.lang.String,int)>
+	private static Pattern signaturePattern = Pattern.compile("<[^<>:]+: [^<> ]+ ([^ (]+)\\([^<>()]*\\)>");
 	
 	/**
 	 
@@ -77,41 +87,45 @@ public class InterestedApiList
 				continue;
 			}
 			
-			// Record interested API
-			interestedApiList.add(listLine);
+			// Record the signatures of interested APIs.
+			// A line may contain several signatures.
+			Matcher signatureMatcher = signaturePattern.matcher(listLine);
+			boolean hasSignature = false;
+			while (signatureMatcher.find())
+			{
+				interestedApiSignatures.add(signatureMatcher.group());
+				interestedApiNames.add(signatureMatcher.group(1));
+				hasSignature = true;
+			}
+			
+			if (!hasSignature)
+			{
+				// The line can't match a method invoked in Jimple statement
+				System.err.println("[WARN] Line in interested API list isn't a method signature, ignored: " + listLine);
+			}
 		}
 	}
 
 	/**
 	 
-		Check if a given fragment of text 
-		contains interested API
+		Check if a method with given name may be an interested API.
+		
+		It is used for quick screening before the signature of method is built.
 
 	 */
-	public boolean containInterestedApi(String text)
+	public boolean hasInterestedApiName(String methodName)
 	{
-		return figureOutInterestedApi(text) != null;
+		return interestedApiNames.contains(methodName);
 	}
 	
 	/**
 	 
-		Specify which interested API is in given text.
-		If given text contains no interested API, null is returned.
+		Check if given method signature is an interested API.
+		The signature is in Soot format.
 
 	 */
-	String figureOutInterestedApi(String text)
+	public boolean isInterestedApi(String methodSignature)
 	{
-		for (String interestedApi : interestedApiList)
-		{
-			//
-			// Here we use contain instead of equal
-			if (text.contains(interestedApi))
-			{
-				return interestedApi;
-			}
-		}
-		
-		// Given text doesn't contain any interested API
-		return null;
+		return interestedApiSignatures.contains(methodSignature);
 	}
 }
@@ -5,6 +5,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import edu.fudan.JimpleKeyword.text.AhoCorasickMatcher;
 import edu.fudan.JimpleKeyword.util.FileUtil;
 
 /**
@@ -20,6 +21,9 @@ public class KeywordList
 	private ArrayList<String> keywordList = new ArrayList<String>();
 	// Word list for sentence words splitting
 	private HashSet<String> wordsForSplitting = new HashSet<String>();
+	// Compiled automaton of keyword list
+	// so that all keywords are matched in one pass
+	private AhoCorasickMatcher keywordMatcher;
 	
 	/**
 	 
@@ -87,6 +91,10 @@ public class KeywordList
 				wordsForSplitting.add(wordInCurLine);
 			}
 		}
+		
+		//
+		// Compile keyword list to automaton
+		keywordMatcher = new AhoCorasickMatcher(keywordList);
 	}
 
 	/**
@@ -115,18 +123,31 @@ public class KeywordList
 		// Keywords in keywordList has already converted to lower case
 		text = text.toLowerCase();
 		
-		for (String knownKeyword : keywordList)
+		//
+		// Here we use contain instead of equal.
+		// If several keywords are in the text,
+		// the one appears first in keyword list is returned.
+		int keywordIndex = keywordMatcher.findFirstPatternIndex(text);
+		if (keywordIndex < 0)
 		{
-			//
-			// Here we use contain instead of equal
-			if (text.contains(knownKeyword))
-			{
-				return knownKeyword;
-			}
+			// Given text doesn't contain any known keyword
+			return null;
 		}
 		
-		// Given text doesn't contain any known keyword
-		return null;
+		return keywordMatcher.getPattern(keywordIndex);
+	}
+	
+	/**
+	 
+		Find out all keywords in given text and their offsets.
+		
+		The text is converted to lower case before matching,
+		so the offsets are the offsets in lower case text.
+	
+	 */
+	public List<AhoCorasickMatcher.Match> findAllKeywords(String text)
+	{
+		return keywordMatcher.findAll(text.toLowerCase());
 	}
 	
 	public Set<String> getDictForWordSplit()
@@ -1,9 +1,13 @@
 package edu.fudan.JimpleKeyword.io;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
 
 import edu.fudan.JimpleKeyword.Config;
+import edu.fudan.JimpleKeyword.text.AhoCorasickMatcher;
 import edu.fudan.JimpleKeyword.util.FileUtil;
 
 /**
@@ -17,6 +21,22 @@ public class LibrariesList
 {
 	private ArrayList<String> librariesList = new ArrayList<String>();
 	
+	//
+	// Most entries in libraries list are package name prefixes.
+	// They are kept in a hash set, so a class name is checked
+	// by looking up each of its leading parts.
+	private Set<String> libPackagePrefixes = new HashSet<String>();
+	
+	//
+	// Entries which aren't plain package names
+	// are matched in text with an automaton.
+	// It is null if there is no such entry.
+	private AhoCorasickMatcher otherEntriesMatcher;
+	
+	// Pattern of plain package name, e.g. com.google.ads
+	private static Pattern packageNamePattern = 
+			Pattern.compile("[A-Za-z_$][A-Za-z0-9_$]*(\\.[A-Za-z_$][A-Za-z0-9_$]*)*");
+	
 	/**
 	 
 		Canonicalize text line read from libraries API list file.
@@ -80,38 +100,67 @@ public class LibrariesList
 			// Record library package name
 			librariesList.add(listLine);
 		}
+		
+		//
+		// Index the entries of libraries list
+		List<String> otherEntries = new ArrayList<String>();
+		for (String libPackageName : librariesList)
+		{
+			if (packageNamePattern.matcher(libPackageName).matches())
+			{
+				libPackagePrefixes.add(libPackageName);
+			}
+			else
+			{
+				otherEntries.add(libPackageName);
+			}
+		}
+		
+		if (!otherEntries.isEmpty())
+		{
+			otherEntriesMatcher = new AhoCorasickMatcher(otherEntries);
+		}
 	}
-
+	
 	/**
 	 
-		Check if a given fragment of text 
-		contains package name of certain library
+		Check if given class is in library packages.
+		
+		The cost is proportional to the number of parts in class name.
+		
+		For class a.b.c.D, we look up a, a.b, a.b.c and a.b.c.D
+		in libraries list.
 
 	 */
-	public boolean containLibPackageName(String text)
+	public boolean containLibClass(String className)
 	{
-		return figureOutLibPackageName(text) != null;
+		int dotPos = className.indexOf('.');
+		while (dotPos >= 0)
+		{
+			if (libPackagePrefixes.contains(className.substring(0, dotPos)))
+			{
+				return true;
+			}
+			
+			dotPos = className.indexOf('.', dotPos + 1);
+		}
+		
+		return libPackagePrefixes.contains(className);
 	}
 	
 	/**
 	 
-		Specify which library package name is in given text.
-		If given text contains no library package name, null is returned.
+		Check if given text contains the libraries list entries
+		which aren't plain package names.
 
 	 */
-	String figureOutLibPackageName(String text)
+	public boolean containOtherLibEntry(String text)
 	{
-		for (String libPackageName : librariesList)
+		if (otherEntriesMatcher == null)
 		{
-			//
-			// Here we use contain instead of equal
-			if (text.contains(libPackageName))
-			{
-				return libPackageName;
-			}
+			return false;
 		}
 		
-		// Given text doesn't contain any package name of library
-		return null;
+		return otherEntriesMatcher.findFirstPatternIndex(text) >= 0;
 	}
 }
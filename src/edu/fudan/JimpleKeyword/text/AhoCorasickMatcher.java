@@ -0,0 +1,362 @@
+package edu.fudan.JimpleKeyword.text;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+	
+	This class implements Aho-Corasick multi-pattern string matching.
+	
+	The automaton is compiled once from a list of patterns,
+	then a text can be matched against all patterns
+	in a single linear pass.
+	
+	Patterns are matched as they are, no case conversion is done here.
+
+ */
+public class AhoCorasickMatcher
+{
+	//
+	// Compiled automaton
+	//
+	// The transitions of node n are stored in
+	// edgeChars/edgeTargets[edgeBegin[n] .. edgeBegin[n+1]),
+	// and edgeChars is sorted within each node for binary search.
+	private int[] edgeBegin;
+	private char[] edgeChars;
+	private int[] edgeTargets;
+	
+	// Failure link of each node
+	private int[] failLink;
+	// The nearest node on failure chain which terminates a pattern,
+	// -1 if there is no such node
+	private int[] outputLink;
+	// The index of pattern terminated at each node, -1 if none.
+	// If a pattern appears in list several times,
+	// the index of its first appearance is recorded.
+	private int[] patternAtNode;
+	
+	// Patterns in their original order
+	private List<String> patterns;
+	
+	/**
+		
+		Data class for recording a pattern found in text
+	
+	 */
+	public static class Match
+	{
+		// The pattern found
+		public final String pattern;
+		// Index of the pattern in pattern list
+		public final int patternIndex;
+		// Offset of the first char of the pattern in text
+		public final int offset;
+		
+		Match(String pattern, int patternIndex, int offset)
+		{
+			this.pattern = pattern;
+			this.patternIndex = patternIndex;
+			this.offset = offset;
+		}
+	}
+	
+	/**
+		
+		Build the automaton with given patterns.
+		
+		Empty patterns are ignored.
+	
+	 */
+	public AhoCorasickMatcher(List<String> patterns)
+	{
+		this.patterns = new ArrayList<String>(patterns);
+		
+		//
+		// Build the trie of patterns with hash maps first
+		List<Map<Character, Integer>> trie = new ArrayList<Map<Character, Integer>>();
+		List<Integer> terminals = new ArrayList<Integer>();
+		trie.add(new HashMap<Character, Integer>());
+		terminals.add(-1);
+		
+		for (int i=0; i<this.patterns.size(); i++)
+		{
+			String pattern = this.patterns.get(i);
+			
+			// Skip empty pattern
+			if (pattern.isEmpty())
+			{
+				continue;
+			}
+			
+			int node = 0;
+			for (int j=0; j<pattern.length(); j++)
+			{
+				Character c = pattern.charAt(j);
+				Integer next = trie.get(node).get(c);
+				if (next == null)
+				{
+					next = trie.size();
+					trie.add(new HashMap<Character, Integer>());
+					terminals.add(-1);
+					trie.get(node).put(c, next);
+				}
+				node = next;
+			}
+			
+			// Keep the index of first appearance only
+			if (terminals.get(node) < 0)
+			{
+				terminals.set(node, i);
+			}
+		}
+		
+		//
+		// Flatten the trie to arrays
+		int nodeCount = trie.size();
+		int edgeCount = nodeCount - 1;
+		edgeBegin = new int[nodeCount + 1];
+		edgeChars = new char[edgeCount];
+		edgeTargets = new int[edgeCount];
+		patternAtNode = new int[nodeCount];
+		
+		int edgeIndex = 0;
+		for (int n=0; n<nodeCount; n++)
+		{
+			edgeBegin[n] = edgeIndex;
+			patternAtNode[n] = terminals.get(n);
+			
+			Map<Character, Integer> children = trie.get(n);
+			char[] chars = new char[children.size()];
+			int k = 0;
+			for (Character c : children.keySet())
+			{
+				chars[k++] = c;
+			}
+			Arrays.sort(chars);
+			
+			for (char c : chars)
+			{
+				edgeChars[edgeIndex] = c;
+				edgeTargets[edgeIndex] = children.get(c);
+				edgeIndex++;
+			}
+		}
+		edgeBegin[nodeCount] = edgeIndex;
+		
+		//
+		// Compute failure links and output links in BFS order
+		failLink = new int[nodeCount];
+		outputLink = new int[nodeCount];
+		outputLink[0] = -1;
+		
+		Queue<Integer> queue = new LinkedList<Integer>();
+		for (int e=edgeBegin[0]; e<edgeBegin[1]; e++)
+		{
+			int child = edgeTargets[e];
+			failLink[child] = 0;
+			outputLink[child] = -1;
+			queue.add(child);
+		}
+		
+		while (!queue.isEmpty())
+		{
+			int node = queue.poll();
+			for (int e=edgeBegin[node]; e<edgeBegin[node+1]; e++)
+			{
+				char c = edgeChars[e];
+				int child = edgeTargets[e];
+				
+				// Find the longest proper suffix of child in trie
+				int fail = failLink[node];
+				int next = getTransition(fail, c);
+				while (next < 0 && fail != 0)
+				{
+					fail = failLink[fail];
+					next = getTransition(fail, c);
+				}
+				failLink[child] = next < 0 ? 0 : next;
+				
+				// Find the nearest pattern on failure chain
+				int failTarget = failLink[child];
+				outputLink[child] = patternAtNode[failTarget] >= 0 ?
+						failTarget : outputLink[failTarget];
+				
+				queue.add(child);
+			}
+		}
+	}
+	
+	/**
+		
+		Return the target node of transition on char c,
+		or -1 if there is no such transition.
+	
+	 */
+	private int getTransition(int node, char c)
+	{
+		int low = edgeBegin[node];
+		int high = edgeBegin[node + 1] - 1;
+		while (low <= high)
+		{
+			int mid = (low + high) >>> 1;
+			char midChar = edgeChars[mid];
+			if (midChar < c)
+			{
+				low = mid + 1;
+			}
+			else if (midChar > c)
+			{
+				high = mid - 1;
+			}
+			else
+			{
+				return edgeTargets[mid];
+			}
+		}
+		
+		return -1;
+	}
+	
+	/**
+		
+		Move the automaton from given node on char c,
+		following failure links when needed.
+	
+	 */
+	private int step(int node, char c)
+	{
+		while (true)
+		{
+			int next = getTransition(node, c);
+			if (next >= 0)
+			{
+				return next;
+			}
+			if (node == 0)
+			{
+				return 0;
+			}
+			node = failLink[node];
+		}
+	}
+	
+	/**
+		
+		Find out all occurrences of all patterns in given text.
+		
+		The matches are ordered by their end position in text.
+	
+	 */
+	public List<Match> findAll(String text)
+	{
+		List<Match> matches = new ArrayList<Match>();
+		
+		int node = 0;
+		for (int i=0; i<text.length(); i++)
+		{
+			node = step(node, text.charAt(i));
+			
+			//
+			// Report all patterns ending at position i
+			int out = patternAtNode[node] >= 0 ? node : outputLink[node];
+			while (out >= 0)
+			{
+				int patternIndex = patternAtNode[out];
+				String pattern = patterns.get(patternIndex);
+				matches.add(new Match(pattern, patternIndex, i - pattern.length() + 1));
+				
+				out = outputLink[out];
+			}
+		}
+		
+		return matches;
+	}
+	
+	/**
+		
+		Find out the pattern with the smallest index in pattern list
+		which appears in given text.
+		
+		This keeps the result of checking patterns one by one
+		in list order with String.contains.
+		If no pattern appears in text, -1 is returned.
+	
+	 */
+	public int findFirstPatternIndex(String text)
+	{
+		int firstIndex = -1;
+		
+		int node = 0;
+		for (int i=0; i<text.length(); i++)
+		{
+			node = step(node, text.charAt(i));
+			
+			int out = patternAtNode[node] >= 0 ? node : outputLink[node];
+			while (out >= 0)
+			{
+				int patternIndex = patternAtNode[out];
+				if (firstIndex < 0 || patternIndex < firstIndex)
+				{
+					firstIndex = patternIndex;
+				}
+				
+				out = outputLink[out];
+			}
+			
+			// The first pattern in list can't be beaten
+			if (firstIndex == 0)
+			{
+				break;
+			}
+		}
+		
+		return firstIndex;
+	}
+	
+	/**
+		
+		Find out the length of the longest pattern
+		which given text starts with.
+		
+		Only the trie of patterns is walked here, failure links are not used.
+		If text doesn't start with any pattern, 0 is returned.
+	
+	 */
+	public int longestPrefixLength(String text)
+	{
+		int longestLength = 0;
+		
+		int node = 0;
+		for (int i=0; i<text.length(); i++)
+		{
+			node = getTransition(node, text.charAt(i));
+			if (node < 0)
+			{
+				break;
+			}
+			
+			if (patternAtNode[node] >= 0)
+			{
+				longestLength = i + 1;
+			}
+		}
+		
+		return longestLength;
+	}
+	
+	/**
+		
+		Return the pattern at given index of pattern list
+	
+	 */
+	public String getPattern(int patternIndex)
+	{
+		return patterns.get(patternIndex);
+	}
+}
@@ -3,8 +3,14 @@ package edu.fudan.JimpleKeyword.text;
 import java.util.ArrayList;
 import java.util.List;
 
+import edu.fudan.JimpleKeyword.Config;
 import edu.fudan.JimpleKeyword.io.KeywordList;
 import edu.fudan.JimpleKeyword.util.StringUtil;
+import soot.Unit;
+import soot.Value;
+import soot.ValueBox;
+import soot.jimple.Constant;
+import soot.jimple.StringConstant;
 
 /**
 
@@ -23,20 +29,27 @@ public class KeywordDetector
 	private WordSplitter wordSplitter;
 	private PorterStemmer porterStemmer;
 	
+	//
+	// Cache of string consts and their keywords
+	private StrConstCache strConstCache;
+	
 	/**
 
-	 	Extract string constants in a given jimple statement
+	 	Extract string constants in the Jimple text of a value,
+	 	i.e. the text between double quotes, in escaped form.
 	 	
+	 	Both string constants and class constants are quoted in Jimple.
 	 	If there is no string constants, an empty list is returned.
 	
 	 */
-	private List<String> extractStringConst(String jimpleInString)
+	private static List<String> extractStringConst(String jimpleInString)
 	{
 		//
-		// Scan the Jimple statement in String
+		// Scan the Jimple text in String
 		
 		int stringConstBegin = 0;
 		int stringConstEnd = 0;
+		boolean inStringConst = false;
 		List<String> stringConsts = new ArrayList<String>();
 		
 		for (int i=0; i<jimpleInString.length(); i++)
@@ -46,9 +59,10 @@ public class KeywordDetector
 			if (jimpleInString.charAt(i) == '\"')
 			{
 				// Record the beginning of a string constant
-				if (stringConstBegin == 0)
+				if (!inStringConst)
 				{
 					stringConstBegin = i;
+					inStringConst = true;
 				}
 				// This is an end of a string constant
 				else
@@ -62,24 +76,16 @@ public class KeywordDetector
 					
 					stringConsts.add(stringConst);
 					
-					// Reset string const begin variable
-					stringConstBegin = 0;
+					inStringConst = false;
 				}
 			}
 			//
 			// Backslash indicates escape character
 			else if (jimpleInString.charAt(i) == '\\')
 			{
-				//
-				// Ensure that char i+1 also exists
-				assert i+1 < jimpleInString.length();
-				
-				// An \" escape sequence is encountered
-				if (jimpleInString.charAt(i+1) == '\"')
-				{
-					// We should skip the escaped double quote char
-					i++;
-				}
+				// We should skip the escaped char,
+				// e.g. the double quote of \" or the backslash of \\
+				i++;
 			}
 			else
 			{
@@ -93,11 +99,29 @@ public class KeywordDetector
 	
 	private String figureOutKeywordInStrConst(String stringConst)
 	{
+		//
+		// Lookup the cache first,
+		// the same string const usually appears many times in an APK
+		StrConstInfo cachedInfo = strConstCache.get(stringConst);
+		if (cachedInfo != null)
+		{
+			return cachedInfo.keyword;
+		}
+		
 		//
 		// Canonicalize string const with word splitting, stemming, etc.
 		// The string const is converted to lower case to ignore case
-		String canonicalizedStrConst = canonicalizeStringConst(stringConst);
+		StrConstInfo info = new StrConstInfo();
+		info.keyword = figureOutKeywordInCanonicalized(canonicalizeStringConst(stringConst));
+		
+		// Save the result to cache
+		strConstCache.put(stringConst, info);
 		
+		return info.keyword;
+	}
+	
+	private String figureOutKeywordInCanonicalized(String canonicalizedStrConst)
+	{
 		// Check if current string const contains keyword
 		String keywordInStringConst = keywordList.figureOutKeyword(canonicalizedStrConst);
 		if (keywordInStringConst != null)
@@ -160,25 +184,68 @@ public class KeywordDetector
 		The keyword returned is stemmed keyword.
 	
 	 */
-	public String figureOutKeywordInJimple(String jimpleInString)
+	public String figureOutKeywordInJimple(Unit unit)
 	{
-		// We only interested in keywords in string constants.
-		List<String> stringConsts = extractStringConst(jimpleInString);
+		//
+		// We only interested in keywords in string constants,
+		// i.e. the quoted text of Jimple, which is in escaped form
+		// and includes the descriptors of class constants.
+		// Only the constants are rendered instead of the whole
+		// Jimple statement, the quoted text of statement is the same.
+		//
+		// For invoke statements, the use boxes are in the order of arguments
+		for (ValueBox valueBox : unit.getUseBoxes())
+		{
+			Value value = valueBox.getValue();
+			if (!(value instanceof Constant))
+			{
+				continue;
+			}
+			
+			for (String stringConst : extractStringConst(value.toString()))
+			{
+				String keywordInStrConst = figureOutKeywordInStrConst(stringConst);
+				if (keywordInStrConst != null)
+				{
+					return keywordInStrConst;
+				}
+			}
+		}
+		
+		// None of the string consts in current Jimple statement
+		// contains keyword
+		return null;
+	}
+	
+	/**
+	 
+	 	Interface Method
+	 
+		Figure out if given string contains keyword,
+		the way string constants in Jimple statements are checked,
+		i.e. the string is checked in the escaped form of Jimple.
+		
+		The cache of string consts is bypassed, so checking strings
+		outside Jimple, e.g. all strings of dex, neither evicts
+		the string consts of Jimple nor skews the cache statistics.
 		
+		If given string contains no keyword, null is returned.
+	
+	 */
+	public String figureOutKeywordInString(String text)
+	{
 		//
-		// Check each string const
-		// CORNER CASE: when the list is empty, the code is still correct
-		for (String stringConst : stringConsts)
-		{			
-			String keywordInStrConst = figureOutKeywordInStrConst(stringConst);
+		// Escape the string like a string constant in Jimple,
+		// the quoted text is the only string const extracted
+		for (String stringConst : extractStringConst(StringConstant.v(text).toString()))
+		{
+			String keywordInStrConst = figureOutKeywordInCanonicalized(canonicalizeStringConst(stringConst));
 			if (keywordInStrConst != null)
 			{
 				return keywordInStrConst;
 			}
 		}
 		
-		// None of the string consts in current Jimple statement
-		// contains keyword
 		return null;
 	}
 	
@@ -197,5 +264,19 @@ public class KeywordDetector
 		// Initialize utilities
 		wordSplitter = new WordSplitter(keywordList.getDictForWordSplit());
 		porterStemmer = new PorterStemmer();
+		strConstCache = new StrConstCache(Config.strConstCacheSize);
+	}
+	
+	//
+	// Statistics on string const cache
+	
+	public long getCacheHitCount()
+	{
+		return strConstCache.getHitCount();
+	}
+	
+	public long getCacheMissCount()
+	{
+		return strConstCache.getMissCount();
 	}
 }
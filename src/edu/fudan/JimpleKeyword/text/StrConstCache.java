@@ -0,0 +1,196 @@
+package edu.fudan.JimpleKeyword.text;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+	
+	This class caches the keyword verdict of string constants.
+	
+	The same string constants appear many times in an APK,
+	so we avoid splitting and stemming them again and again.
+	
+	The cache is bounded and evicts the least recently used entry.
+	It is shared by the workers of parallel Jimple scan,
+	so the cache is split into segments chosen by the hash of string const,
+	each with its own lock, LRU order and statistics.
+	The workers looking up different segments don't wait for each other.
+	Entries are evicted in LRU order of their segment,
+	which approximates the LRU order of the whole cache.
+
+ */
+class StrConstCache
+{
+	// Max number of segments, enough for the workers of a many-core machine
+	// to rarely meet on the same segment
+	private static final int MAX_SEGMENT_COUNT = 64;
+	
+	// Min number of entries of a segment,
+	// so a small cache isn't split into tiny LRU lists
+	private static final int MIN_SEGMENT_CAPACITY = 1024;
+	
+	private StrConstCacheSegment[] segments;
+	
+	StrConstCache(int capacity)
+	{
+		//
+		// Use a power of 2 as segment count,
+		// so a segment is chosen by the low bits of hash
+		int segmentCount = 1;
+		while (segmentCount < MAX_SEGMENT_COUNT
+				&& capacity / (segmentCount * 2) >= MIN_SEGMENT_CAPACITY)
+		{
+			segmentCount *= 2;
+		}
+		
+		//
+		// The capacity is spread over segments,
+		// the first ones take the remainder
+		segments = new StrConstCacheSegment[segmentCount];
+		for (int i=0; i<segmentCount; i++)
+		{
+			int segmentCapacity = Math.max(0, capacity / segmentCount + (i < capacity % segmentCount ? 1 : 0));
+			segments[i] = new StrConstCacheSegment(segmentCapacity);
+		}
+	}
+	
+	private StrConstCacheSegment getSegment(String stringConst)
+	{
+		//
+		// Spread the high bits of hash to the low ones,
+		// since the hashes of similar strings differ in high bits
+		int hash = stringConst.hashCode();
+		hash ^= (hash >>> 16);
+		
+		return segments[hash & (segments.length - 1)];
+	}
+	
+	/**
+		
+		Lookup the info of given string const.
+		If it isn't cached, null is returned.
+	
+	 */
+	StrConstInfo get(String stringConst)
+	{
+		return getSegment(stringConst).get(stringConst);
+	}
+	
+	void put(String stringConst, StrConstInfo info)
+	{
+		getSegment(stringConst).put(stringConst, info);
+	}
+	
+	//
+	// Statistics on cache usage, summed up over segments
+	
+	long getHitCount()
+	{
+		long hitCount = 0;
+		for (StrConstCacheSegment segment : segments)
+		{
+			hitCount += segment.getHitCount();
+		}
+		
+		return hitCount;
+	}
+	
+	long getMissCount()
+	{
+		long missCount = 0;
+		for (StrConstCacheSegment segment : segments)
+		{
+			missCount += segment.getMissCount();
+		}
+		
+		return missCount;
+	}
+}
+
+/**
+	
+	A segment of string const cache with its own lock
+
+ */
+class StrConstCacheSegment
+{
+	//
+	// LRU map from string const in escaped form to its inspection result
+	private Map<String, StrConstInfo> cache;
+	
+	// Max number of entries kept in segment
+	private int capacity;
+	
+	//
+	// Statistics on segment usage
+	private long hitCount;
+	private long missCount;
+	
+	StrConstCacheSegment(final int capacity)
+	{
+		this.capacity = capacity;
+		
+		//
+		// LinkedHashMap in access order gives LRU eviction
+		this.cache = new LinkedHashMap<String, StrConstInfo>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, StrConstInfo> eldest)
+			{
+				return size() > capacity;
+			}
+		};
+	}
+	
+	synchronized StrConstInfo get(String stringConst)
+	{
+		StrConstInfo info = cache.get(stringConst);
+		if (info == null)
+		{
+			missCount++;
+		}
+		else
+		{
+			hitCount++;
+		}
+		
+		return info;
+	}
+	
+	synchronized void put(String stringConst, StrConstInfo info)
+	{
+		//
+		// Nothing is kept when cache is disabled
+		if (capacity <= 0)
+		{
+			return;
+		}
+		
+		cache.put(stringConst, info);
+	}
+	
+	synchronized long getHitCount()
+	{
+		return hitCount;
+	}
+	
+	synchronized long getMissCount()
+	{
+		return missCount;
+	}
+}
+
+/**
+	
+	Data class for recording the inspection result of a string const,
+	so that a string const without keyword is cached as well
+
+ */
+class StrConstInfo
+{
+	// The keyword in string const,
+	// null if there is no keyword
+	String keyword;
+}
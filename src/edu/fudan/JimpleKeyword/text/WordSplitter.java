@@ -14,11 +14,13 @@ import java.util.StringTokenizer;
 class WordSplitter {
 	
 	// Keywords dictionary used for word splitting
-	private Set<String> dictForWordSplit;
+	// The dictionary is compiled to a trie
+	// so that the longest prefix is found in a single walk
+	private AhoCorasickMatcher dictForWordSplit;
 	
 	WordSplitter(Set<String> dictForWordSplit)
 	{
-		this.dictForWordSplit = dictForWordSplit;
+		this.dictForWordSplit = new AhoCorasickMatcher(new ArrayList<String>(dictForWordSplit));
 	}
 	
 	private List<String> splitWordsByDelimiter(String s)
@@ -225,23 +227,10 @@ class WordSplitter {
 		// Check assumptions
 		assert fragment != null;
 		
-		// The default prefix is empty string
-		// We use empty string as default value
-		// since it can facilitate length comparison
-		String longestPrefix = "";
+		// Empty string is returned when no word matches
+		int longestPrefixLength = dictForWordSplit.longestPrefixLength(fragment);
 		
-		for (String wordInDict : dictForWordSplit)
-		{
-			if (fragment.startsWith(wordInDict))
-			{
-				if (wordInDict.length() > longestPrefix.length())
-				{
-					longestPrefix = wordInDict;
-				}
-			}
-		}
-		
-		return longestPrefix;
+		return fragment.substring(0, longestPrefixLength);
 	}
 	
 	private void splitWordsByDict(String fragment, List<String> wordsOut)
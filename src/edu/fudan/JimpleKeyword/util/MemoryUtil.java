@@ -0,0 +1,54 @@
+package edu.fudan.JimpleKeyword.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+/**
+
+	This file contains some utility functions 
+	for measuring heap usage of analysis phases
+
+ */
+public class MemoryUtil
+{
+	/**
+		
+		Reset the peak usage of heap memory pools,
+		so that the peak of next phase can be measured.
+	
+	 */
+	public static void resetPeakHeapUsage()
+	{
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+		{
+			if (pool.getType() == MemoryType.HEAP)
+			{
+				pool.resetPeakUsage();
+			}
+		}
+	}
+	
+	/**
+		
+		Get the peak heap usage in MB since last reset.
+		
+		The peaks of heap memory pools are summed up,
+		since the pools don't reach their peaks at the same time,
+		the result is an upper bound.
+	
+	 */
+	public static long getPeakHeapUsageInMB()
+	{
+		long peakUsage = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+		{
+			if (pool.getType() == MemoryType.HEAP)
+			{
+				peakUsage += pool.getPeakUsage().getUsed();
+			}
+		}
+		
+		return peakUsage / (1024 * 1024);
+	}
+}
@@ -0,0 +1,126 @@
+package edu.fudan.JimpleKeyword.util;
+
+import soot.Unit;
+
+/**
+	
+	Compact side index from Jimple statements to statement IDs.
+	
+	Statements are compared by identity, and the IDs are kept
+	in a primitive array with open addressing,
+	so no object is allocated for each statement recorded.
+
+*/
+public class UnitIdIndex
+{
+	// Returned when a statement isn't in index
+	public static final int NO_ID = -1;
+	
+	private Unit[] keys;
+	private int[] values;
+	private int size;
+	
+	public UnitIdIndex()
+	{
+		keys = new Unit[64];
+		values = new int[64];
+	}
+	
+	private static int slotOf(Unit unit, int capacity)
+	{
+		//
+		// Spread the bits of identity hash code
+		// since capacity is a power of 2
+		int hash = System.identityHashCode(unit);
+		hash ^= (hash >>> 16);
+		hash *= 0x85ebca6b;
+		hash ^= (hash >>> 13);
+		
+		return hash & (capacity - 1);
+	}
+	
+	/**
+		
+		Record the ID of given statement.
+		The ID recorded before is overwritten.
+	
+	 */
+	public void put(Unit unit, int id)
+	{
+		//
+		// Keep load factor under 1/2
+		if ((size + 1) * 2 > keys.length)
+		{
+			grow();
+		}
+		
+		int slot = slotOf(unit, keys.length);
+		while (keys[slot] != null)
+		{
+			if (keys[slot] == unit)
+			{
+				values[slot] = id;
+				return;
+			}
+			slot = (slot + 1) & (keys.length - 1);
+		}
+		
+		keys[slot] = unit;
+		values[slot] = id;
+		size++;
+	}
+	
+	/**
+		
+		Return the ID of given statement.
+		If the statement isn't recorded, NO_ID is returned.
+	
+	 */
+	public int get(Unit unit)
+	{
+		int slot = slotOf(unit, keys.length);
+		while (keys[slot] != null)
+		{
+			if (keys[slot] == unit)
+			{
+				return values[slot];
+			}
+			slot = (slot + 1) & (keys.length - 1);
+		}
+		
+		return NO_ID;
+	}
+	
+	public int size()
+	{
+		return size;
+	}
+	
+	/**
+		
+		Return the number of slots allocated
+	
+	 */
+	public int capacity()
+	{
+		return keys.length;
+	}
+	
+	private void grow()
+	{
+		Unit[] oldKeys = keys;
+		int[] oldValues = values;
+		
+		keys = new Unit[oldKeys.length * 2];
+		values = new int[oldValues.length * 2];
+		size = 0;
+		
+		for (int i=0; i<oldKeys.length; i++)
+		{
+			if (oldKeys[i] != null)
+			{
+				put(oldKeys[i], oldValues[i]);
+			}
+		}
+	}
+}